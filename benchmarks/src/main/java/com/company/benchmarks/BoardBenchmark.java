@@ -0,0 +1,235 @@
+package com.company.benchmarks;
+
+import com.company.BitBoard;
+import com.company.BoardRenderer;
+import com.company.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-move hot paths of a match: dropping a disc (placePiece), checking for a winner (checkWinner), checking for
+ * a full board (checkIfNoWinner) and drawing the board (showBoard).
+ *
+ * Win detection and rendering run over a fixed set of random positions, either mid-game (16 discs) or end-game
+ * (34 discs), with no winner yet so every direction has to be checked. The legacy benchmarks run the original
+ * char[6][7] versions of the same code as a baseline.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoardBenchmark {
+
+    private static final int POSITIONS = 1024;
+
+    @State(Scope.Thread)
+    public static class Positions {
+
+        @Param({"midgame", "endgame"})
+        public String phase;
+
+        BitBoard[] boards = new BitBoard[POSITIONS];
+        char[][][] legacyBoards = new char[POSITIONS][][];
+        // a full game's worth of legal columns, for replaying moves
+        int[] fillingGame = new int[BitBoard.ROWS * BitBoard.COLUMNS];
+        BitBoard scratch = new BitBoard();
+        BoardRenderer renderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+        PrintWriter nullOutput = new PrintWriter(OutputStream.nullOutputStream(), true);
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(2022);
+            int discs = phase.equals("midgame") ? 16 : 34;
+            for (int i = 0; i < POSITIONS; i++) {
+                boards[i] = randomPosition(random, discs);
+                legacyBoards[i] = toChars(boards[i]);
+            }
+            BitBoard board = new BitBoard();
+            for (int move = 0; move < fillingGame.length; move++) {
+                int column;
+                do {
+                    column = random.nextInt(BitBoard.COLUMNS);
+                } while (!board.canPlay(column));
+                board.play(column, move % 2);
+                fillingGame[move] = column;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BitBoard.ROWS * BitBoard.COLUMNS)
+    public int placePiece(Positions positions) {
+        BitBoard board = positions.scratch;
+        board.reset();
+        int row = 0;
+        for (int move = 0; move < positions.fillingGame.length; move++) {
+            row += board.play(positions.fillingGame[move], move % 2);
+        }
+        return row;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void checkWinner(Positions positions, Blackhole blackhole) {
+        for (BitBoard board : positions.boards) {
+            blackhole.consume(board.hasWon(0) | board.hasWon(1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void checkWinnerLegacy(Positions positions, Blackhole blackhole) {
+        for (char[][] board : positions.legacyBoards) {
+            blackhole.consume(LegacyChecks.hasWon(board, 'R') | LegacyChecks.hasWon(board, 'Y'));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void checkIfNoWinner(Positions positions, Blackhole blackhole) {
+        for (BitBoard board : positions.boards) {
+            blackhole.consume(board.isFull());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void showBoard(Positions positions, Blackhole blackhole) {
+        for (BitBoard board : positions.boards) {
+            blackhole.consume(positions.renderer.render(board));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void showBoardLegacy(Positions positions) {
+        for (char[][] board : positions.legacyBoards) {
+            LegacyChecks.showBoard(board, positions.nullOutput);
+        }
+    }
+
+    private static BitBoard randomPosition(Random random, int discs) {
+        while (true) {
+            BitBoard board = new BitBoard();
+            for (int move = 0; move < discs; move++) {
+                int column = random.nextInt(BitBoard.COLUMNS);
+                if (board.play(column, move % 2) == -1) {
+                    move--;
+                }
+            }
+            if (!board.hasWon(0) && !board.hasWon(1)) {
+                return board;
+            }
+        }
+    }
+
+    private static char[][] toChars(BitBoard board) {
+        char[][] cells = new char[BitBoard.ROWS][BitBoard.COLUMNS];
+        for (int row = 0; row < BitBoard.ROWS; row++) {
+            for (int column = 0; column < BitBoard.COLUMNS; column++) {
+                int occupant = board.occupant(row, column);
+                cells[row][column] = occupant == BitBoard.EMPTY ? 'O' : occupant == 0 ? 'R' : 'Y';
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * The board code from before BitBoard and BoardRenderer, kept as a baseline. The four checks scan the whole
+     * board and stop when they run off the edge of the array, the same as the originals did.
+     */
+    static class LegacyChecks {
+
+        static boolean hasWon(char[][] board, char letter) {
+            return checkVertical(board, letter) | checkHorizontal(board, letter)
+                    | checkDiagonal(board, letter) | checkNegativeDiagonal(board, letter);
+        }
+
+        static boolean checkVertical(char[][] board, char letter) {
+            boolean found = false;
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        found |= board[row][column] == letter && board[row + 1][column] == letter
+                                && board[row + 2][column] == letter && board[row + 3][column] == letter;
+                    }
+                }
+            } catch (Exception e) {
+            }
+            return found;
+        }
+
+        static boolean checkHorizontal(char[][] board, char letter) {
+            boolean found = false;
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        found |= board[row][column] == letter && board[row][column + 1] == letter
+                                && board[row][column + 2] == letter && board[row][column + 3] == letter;
+                    }
+                }
+            } catch (Exception e) {
+            }
+            return found;
+        }
+
+        static boolean checkDiagonal(char[][] board, char letter) {
+            boolean found = false;
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        found |= board[row][column] == letter && board[row + 1][column - 1] == letter
+                                && board[row + 2][column - 2] == letter && board[row + 3][column - 3] == letter;
+                        found |= board[row][column] == letter && board[row + 1][column + 1] == letter
+                                && board[row + 2][column + 2] == letter && board[row + 3][column + 3] == letter;
+                    }
+                }
+            } catch (Exception e) {
+            }
+            return found;
+        }
+
+        static boolean checkNegativeDiagonal(char[][] board, char letter) {
+            boolean found = false;
+            try {
+                for (int row = 0; row <= 3; row++) {
+                    for (int column = 0; column <= 3; column++) {
+                        found |= board[row][column] == letter && board[row + 1][column + 1] == letter
+                                && board[row + 2][column + 2] == letter && board[row + 3][column + 3] == letter;
+                    }
+                }
+            } catch (Exception e) {
+            }
+            return found;
+        }
+
+        static void showBoard(char[][] board, PrintWriter terminalOutput) {
+            terminalOutput.println("1  2  3  4  5  6  7 ");
+            terminalOutput.println("====================");
+            for (char[] row : board) {
+                for (char cell : row) {
+                    terminalOutput.print(cell + "  ");
+                }
+                terminalOutput.println();
+            }
+            terminalOutput.println("====================");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.company.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files (the -rf json output saved by the jmh task) and prints the change in score and in
+ * allocation per operation for every benchmark both runs have in common.
+ *
+ * Usage: CompareResults <base.json> <candidate.json>
+ *
+ * A change is only flagged when it's bigger than both runs' error margins added together, anything smaller is noise.
+ */
+public class CompareResults {
+
+    private static final TypeAdapter<JsonElement> JSON_ELEMENT = new Gson().getAdapter(JsonElement.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <base.json> <candidate.json>");
+            System.exit(2);
+        }
+        Map<String, JsonObject> base = load(Path.of(args[0]));
+        Map<String, JsonObject> candidate = load(Path.of(args[1]));
+
+        System.out.printf("%-70s %14s %14s %9s %12s %12s%n",
+                "Benchmark", "Base", "Candidate", "Change", "Base B/op", "Cand. B/op");
+        for (Map.Entry<String, JsonObject> entry : base.entrySet()) {
+            JsonObject after = candidate.get(entry.getKey());
+            if (after == null) {
+                System.out.printf("%-70s (missing from candidate)%n", entry.getKey());
+                continue;
+            }
+            JsonObject beforeMetric = entry.getValue().getAsJsonObject("primaryMetric");
+            JsonObject afterMetric = after.getAsJsonObject("primaryMetric");
+            double beforeScore = number(beforeMetric, "score");
+            double afterScore = number(afterMetric, "score");
+            double error = number(beforeMetric, "scoreError") + number(afterMetric, "scoreError");
+            double change = beforeScore == 0 ? 0 : (afterScore - beforeScore) / beforeScore * 100;
+            String verdict = Double.isNaN(error) || Math.abs(afterScore - beforeScore) > error ? "" : " ~";
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%%s %12s %12s  %s%n", entry.getKey(), beforeScore,
+                    afterScore, change, verdict, allocation(entry.getValue()), allocation(after),
+                    string(beforeMetric, "scoreUnit"));
+        }
+        for (String name : candidate.keySet()) {
+            if (!base.containsKey(name)) {
+                System.out.printf("%-70s (new in candidate)%n", name);
+            }
+        }
+    }
+
+    /**
+     * @return each benchmark in the file keyed by its name plus its parameters, e.g. BoardBenchmark.checkWinner:phase=endgame
+     * @throws IOException if the file can't be read or isn't a JMH result file
+     */
+    static Map<String, JsonObject> load(Path file) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file))) {
+            // strict, unlike JsonParser, so anything that isn't valid JSON is an error rather than a guess
+            reader.setLenient(false);
+            JsonElement runs = JSON_ELEMENT.read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonParseException("more after the list of benchmark runs");
+            }
+            return parse(runs);
+        } catch (JsonParseException | MalformedJsonException | EOFException e) {
+            throw new IOException(file + " isn't a JMH result file (-rf json): " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, JsonObject> parse(JsonElement runs) {
+        if (!runs.isJsonArray()) {
+            throw new JsonParseException("expected a list of benchmark runs");
+        }
+        Map<String, JsonObject> byName = new LinkedHashMap<>();
+        for (JsonElement run : runs.getAsJsonArray()) {
+            if (!run.isJsonObject()) {
+                throw new JsonParseException("expected a benchmark run, found " + run);
+            }
+            JsonObject benchmark = run.getAsJsonObject();
+            StringBuilder name = new StringBuilder(string(benchmark, "benchmark"));
+            name.delete(0, name.lastIndexOf(".", name.lastIndexOf(".") - 1) + 1);
+            JsonObject params = optionalObject(benchmark, "params");
+            if (params != null) {
+                for (String param : params.keySet()) {
+                    name.append(':').append(param).append('=').append(string(params, param));
+                }
+            }
+            // every run needs a score and its unit, checked here so a broken file fails as it's loaded
+            JsonObject primaryMetric = optionalObject(benchmark, "primaryMetric");
+            if (primaryMetric == null) {
+                throw new JsonParseException(name + " has no primaryMetric");
+            }
+            string(primaryMetric, "scoreUnit");
+            byName.put(name.toString(), benchmark);
+        }
+        return byName;
+    }
+
+    private static JsonObject optionalObject(JsonObject parent, String name) {
+        JsonElement value = parent.get(name);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        if (!value.isJsonObject()) {
+            throw new JsonParseException("expected " + name + " to be an object, found " + value);
+        }
+        return value.getAsJsonObject();
+    }
+
+    private static String string(JsonObject parent, String name) {
+        JsonElement value = parent.get(name);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new JsonParseException("expected " + name + " to be a value, found " + value);
+        }
+        return value.getAsString();
+    }
+
+    private static String allocation(JsonObject benchmark) {
+        JsonObject secondary = optionalObject(benchmark, "secondaryMetrics");
+        JsonObject allocated = secondary == null ? null : optionalObject(secondary, "gc.alloc.rate.norm");
+        return allocated == null ? "-" : String.format("%.1f", number(allocated, "score"));
+    }
+
+    static double number(JsonObject metric, String name) {
+        JsonElement value = metric.get(name);
+        if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+            // JMH writes "NaN" as a string when there weren't enough iterations to work out an error
+            return Double.NaN;
+        }
+        return value.getAsDouble();
+    }
+}
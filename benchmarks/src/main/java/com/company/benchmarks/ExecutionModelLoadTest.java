@@ -0,0 +1,120 @@
+package com.company.benchmarks;
+
+import com.company.InputLimits;
+import com.company.MatchExecutors;
+import com.company.Matchmaker;
+import com.company.ThreadedServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds thousands of blocking-mode matches open at the same time and reports how many threads and how much heap
+ * each one costs, so the platform and virtual thread executors can be compared.
+ *
+ * The server runs in this JVM on a loopback port. The clients are plain non-blocking channels on one selector so
+ * they don't add any threads of their own. Every client answers the ready prompt and each match then sits on
+ * player 1's turn, which leaves each ConnectionThread blocked on readLine(), the state idle matches spend most of
+ * their time in.
+ *
+ * Run each executor in its own JVM to keep the numbers apart, for example:
+ * java -cp ... com.company.benchmarks.ExecutionModelLoadTest --threads=virtual --matches=10000
+ * Every match needs 4 file descriptors, so raise ulimit -n first.
+ */
+public class ExecutionModelLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ThreadedServer.parseOptions(args);
+        int matches = Integer.parseInt(options.getOrDefault("matches", "10000"));
+        String threads = options.getOrDefault("threads", "platform");
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        ExecutorService executor = MatchExecutors.forName(threads);
+
+        Matchmaker matchmaker = new Matchmaker(executor, TimeUnit.MINUTES.toMillis(10));
+        // the matches sit on player 1's turn for as long as the test runs, so their turns mustn't time out either
+        matchmaker.setInputLimits(new InputLimits(64, 10, 20, TimeUnit.MINUTES.toMillis(10)));
+        matchmaker.start();
+        ServerSocket serverSocket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            try {
+                ThreadedServer.serveBlocking(serverSocket, matchmaker);
+            } catch (IOException e) {
+                // closed at the end of the test
+            }
+        }, "load-test-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        System.gc();
+        int baselineThreads = threadBean.getThreadCount();
+        long baselineHeap = memoryBean.getHeapMemoryUsage().getUsed();
+
+        long started = System.nanoTime();
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        for (int i = 0; i < matches; i++) {
+            for (int player = 0; player < 2; player++) {
+                SocketChannel client = SocketChannel.open(address);
+                client.configureBlocking(false);
+                client.write(ByteBuffer.wrap("R\n".getBytes(StandardCharsets.US_ASCII)));
+                client.register(selector, SelectionKey.OP_READ, new StringBuilder());
+            }
+        }
+
+        // a match is up and waiting once player 1 has been asked for their first move. The Matchmaker pairs players
+        // in the order they become ready, so any client could turn out to be player 1.
+        int waitingMatches = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (waitingMatches < matches) {
+            selector.select(1000);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                buffer.clear();
+                ((SocketChannel) key.channel()).read(buffer);
+                StringBuilder received = (StringBuilder) key.attachment();
+                if (received != null) {
+                    received.append(new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+                    if (received.indexOf("[R] Your turn!") >= 0) {
+                        waitingMatches++;
+                        key.attach(null);
+                    }
+                }
+            }
+        }
+        long secondsToStart = (System.nanoTime() - started) / 1_000_000_000L;
+
+        System.gc();
+        int threadsUsed = threadBean.getThreadCount() - baselineThreads;
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed() - baselineHeap;
+
+        System.out.println("Executor:              " + threads);
+        System.out.println("Simultaneous matches:  " + matches + " (started in " + secondsToStart + "s)");
+        System.out.println("Live threads added:    " + threadsUsed);
+        System.out.printf("Threads per match:     %.3f%n", (double) threadsUsed / matches);
+        System.out.printf("Heap per match:        %.1f KB (includes the test's own client channels)%n",
+                heapUsed / 1024.0 / matches);
+        System.out.println("Platform threads also reserve a native stack each (-Xss, 1MB by default) that isn't"
+                + " part of the heap number");
+
+        // the blocked matches can't be interrupted out of readLine(), so just end the JVM
+        System.exit(0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.company.benchmarks;
+
+import com.company.BitBoard;
+import com.company.BoardGeometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one move (dropping a disc and checking whether it won) as the board grows. The standard board uses
+ * the one-long shift check, every other size only looks along the lines through the disc just played, so the time
+ * per move should follow the win length and stay flat as rows and columns are added.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeometryBenchmark {
+
+    // fits on the smallest board below without filling a column, so every move lands
+    private static final int MOVES = 32;
+
+    @State(Scope.Thread)
+    public static class Game {
+
+        @Param({"6x7x4", "7x8x4", "8x9x5", "12x16x5", "20x20x6"})
+        public String geometry;
+
+        BitBoard board;
+        int[] columns = new int[MOVES];
+
+        @Setup
+        public void setUp() {
+            board = new BitBoard(BoardGeometry.parse(geometry));
+            Random random = new Random(2022);
+            // random columns, the same ones every run so results can be compared
+            for (int move = 0; move < MOVES; move++) {
+                int column;
+                do {
+                    column = random.nextInt(board.getColumns());
+                } while (!board.canPlay(column));
+                board.play(column, move % 2);
+                columns[move] = column;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int playAndCheck(Game game) {
+        BitBoard board = game.board;
+        board.reset();
+        int wins = 0;
+        for (int move = 0; move < MOVES; move++) {
+            int player = move % 2;
+            board.play(game.columns[move], player);
+            if (board.hasWon(player)) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+}
@@ -0,0 +1,651 @@
+package com.company.benchmarks;
+
+import com.company.BinaryProtocol;
+import com.company.BitBoard;
+import com.company.ThreadedServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Capacity test for a running server: plays thousands of matches against it from headless clients and reports how
+ * fast they connect, how quickly moves are answered and how many matches finish per second.
+ *
+ * Three latencies are kept for moves. The round trip is from sending a move to the server confirming it. The turn
+ * handoff is from the opponent's move arriving to being told it's our turn, which is where a server that sends
+ * the move straight away but holds back the turn (Nagle, or a slow turn change) shows up. Move to next turn is the
+ * whole cycle from our move to our next turn, opponent included. At the end the matches per second those latencies
+ * add up to is checked against the matches per second actually seen, and a warning is printed if they're far
+ * apart, since then time is going somewhere none of them measure.
+ *
+ * Clients are started two at a time so they end up as each other's opponent, and a new pair is started as soon as
+ * both clients of an earlier pair are done, keeping --concurrency matches in play until --matches have been started.
+ * Every client answers the ready prompt straight away and then plays a legal column whenever it's told it's its
+ * turn, either at random or from --script. The clients run on a few selector threads of their own so they can
+ * hold many more connections open than the server under test.
+ *
+ * Options:
+ *   --port=1024           the server's port, always on the loopback address
+ *   --protocol=text       text (works with both server modes) or binary (NIO mode only)
+ *   --matches=1000        matches to play in total
+ *   --concurrency=100     matches in play at the same time
+ *   --loops=1             client selector threads
+ *   --think=0             milliseconds each client waits before answering its turn, to model real players
+ *   --script=<columns>    columns to play from the start of every match, e.g. 4453, numbered from 1 like a player
+ *                         types them. Moves after the script runs out are random
+ *   --seed=<n>            seed for the random moves
+ *   --match-timeout=60    seconds before a match that hasn't finished counts as timed out
+ *   --report=5            seconds between progress lines
+ *   --max-error-rate=0.01 exit with status 1 if more than this fraction of clients fail
+ *
+ * Every match needs 2 file descriptors here and 2 in the server, so raise ulimit -n for large runs.
+ */
+public class LoadGenerator {
+
+    private static final byte[] TEXT_READY = "R\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_READY = {BinaryProtocol.MAGIC, BinaryProtocol.CLIENT_READY, 0};
+
+    // totals shared by every loop, read by the progress reports
+    private final LongAdder clientsStarted = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder opponentLeft = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+    private final LongAdder movesPlayed = new LongAdder();
+
+    private final InetSocketAddress address;
+    private final boolean binary;
+    private final long thinkNanos;
+    private final int[] script;
+    private final long matchTimeoutNanos;
+
+    private LoadGenerator(Map<String, String> options) {
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(options.getOrDefault("port", "1024")));
+        binary = options.getOrDefault("protocol", "text").equals("binary");
+        thinkNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.getOrDefault("think", "0")));
+        String columns = options.getOrDefault("script", "");
+        script = new int[columns.length()];
+        for (int i = 0; i < columns.length(); i++) {
+            script[i] = columns.charAt(i) - '1';
+            if (script[i] < 0 || script[i] >= BitBoard.COLUMNS) {
+                throw new IllegalArgumentException("Not a column: " + columns.charAt(i));
+            }
+        }
+        matchTimeoutNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("match-timeout", "60")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ThreadedServer.parseOptions(args);
+        int matches = Integer.parseInt(options.getOrDefault("matches", "1000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "100"));
+        int loopCount = Integer.parseInt(options.getOrDefault("loops", "1"));
+        long seed = Long.parseLong(options.getOrDefault("seed", String.valueOf(System.nanoTime())));
+        long reportNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("report", "5")));
+        double maxErrorRate = Double.parseDouble(options.getOrDefault("max-error-rate", "0.01"));
+
+        LoadGenerator generator = new LoadGenerator(options);
+        System.out.printf("Playing %d matches against %s, %d at a time, %s protocol%n",
+                matches, generator.address, concurrency, generator.binary ? "binary" : "text");
+
+        // matches and concurrency are split between the loops as evenly as they can be
+        List<Loop> loops = new ArrayList<>();
+        for (int i = 0; i < loopCount; i++) {
+            int loopMatches = matches / loopCount + (i < matches % loopCount ? 1 : 0);
+            int loopConcurrency = Math.max(1, concurrency / loopCount + (i < concurrency % loopCount ? 1 : 0));
+            loops.add(generator.new Loop(loopMatches, loopConcurrency, new Random(seed + i)));
+        }
+        long started = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < loops.size(); i++) {
+            Thread thread = new Thread(loops.get(i), "load-generator-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            long nextReport = System.nanoTime() + reportNanos;
+            while (thread.isAlive()) {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextReport - System.nanoTime())));
+                if (thread.isAlive()) {
+                    generator.progress(started);
+                    nextReport += reportNanos;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Samples connect = new Samples();
+        Samples gameStart = new Samples();
+        Samples roundTrip = new Samples();
+        Samples handoff = new Samples();
+        Samples cycle = new Samples();
+        for (Loop loop : loops) {
+            connect.addAll(loop.connectLatency);
+            gameStart.addAll(loop.gameStartLatency);
+            roundTrip.addAll(loop.roundTripLatency);
+            handoff.addAll(loop.handoffLatency);
+            cycle.addAll(loop.cycleLatency);
+        }
+
+        long clients = generator.clientsStarted.sum();
+        long failures = generator.connectFailures.sum() + generator.disconnects.sum() + generator.timeouts.sum()
+                + generator.opponentLeft.sum();
+        double errorRate = clients == 0 ? 0 : (double) failures / clients;
+        long completed = generator.completedMatches();
+        System.out.println();
+        System.out.printf("Matches completed:     %d of %d in %.1fs (%.1f matches/s, %.0f moves/s)%n",
+                completed, matches, seconds, completed / seconds, generator.movesPlayed.sum() / seconds);
+        System.out.printf("Results:               %d won, %d drawn, %d opponent left%n",
+                generator.wins.sum(), generator.draws.sum() / 2, generator.opponentLeft.sum());
+        System.out.printf("Errors:                %d connect failed, %d disconnected, %d timed out, "
+                        + "%d protocol errors (%.2f%% of %d clients failed)%n",
+                generator.connectFailures.sum(), generator.disconnects.sum(), generator.timeouts.sum(),
+                generator.protocolErrors.sum(), errorRate * 100, clients);
+        System.out.println("Connect latency:       " + connect);
+        System.out.println("Time to game start:    " + gameStart);
+        System.out.println("Move round trip:       " + roundTrip);
+        System.out.println("Turn handoff:          " + handoff);
+        System.out.println("Move to next turn:     " + cycle);
+        generator.checkThroughput(completed / seconds, Math.min(matches, concurrency), gameStart, roundTrip,
+                handoff);
+        System.exit(errorRate > maxErrorRate ? 1 : 0);
+    }
+
+    /**
+     * Works out the matches per second the latencies add up to and warns if the measured rate is far from it. Each
+     * move costs its round trip, the handoff to the other player and their think time, and every match also waits
+     * for its game to start.
+     *
+     * @param matchesPerSecond - what was measured
+     * @param inPlay           - matches played at the same time
+     */
+    private void checkThroughput(double matchesPerSecond, int inPlay, Samples gameStart, Samples roundTrip,
+                                 Samples handoff) {
+        long completed = completedMatches();
+        if (completed == 0 || roundTrip.count == 0 || handoff.count == 0) {
+            return;
+        }
+        double movesPerMatch = (double) movesPlayed.sum() / completed;
+        double moveSeconds = (roundTrip.meanNanos() + handoff.meanNanos() + thinkNanos) / 1e9;
+        double matchSeconds = gameStart.meanNanos() / 1e9 + movesPerMatch * moveSeconds;
+        double expected = inPlay / matchSeconds;
+        System.out.printf("Expected from latency: %.1f matches/s (%.1f moves a match at %.2fms each)%n",
+                expected, movesPerMatch, moveSeconds * 1000);
+        if (matchesPerSecond < expected / 2 || matchesPerSecond > expected * 2) {
+            System.out.printf("WARNING: %.1f matches/s measured doesn't agree with the latencies above, "
+                    + "time is being spent somewhere they don't measure%n", matchesPerSecond);
+        }
+    }
+
+    /**
+     * A decided match has exactly one winner, a drawn match tells both players.
+     */
+    private long completedMatches() {
+        return wins.sum() + draws.sum() / 2;
+    }
+
+    private void progress(long started) {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%6.1fs  %d matches completed (%.1f/s), %d moves, %d errors%n", seconds,
+                completedMatches(), completedMatches() / seconds, movesPlayed.sum(),
+                connectFailures.sum() + disconnects.sum() + timeouts.sum() + opponentLeft.sum());
+    }
+
+    /**
+     * One selector thread running its share of the clients.
+     */
+    private class Loop implements Runnable {
+
+        private final Selector selector;
+        private final Random random;
+        private final int concurrency;
+        private int pairsLeft;
+        private final Set<Client[]> pairs = new HashSet<>();
+        // clients waiting out their think time. Every client waits the same time so the queue stays in order
+        private final ArrayDeque<Client> thinking = new ArrayDeque<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+        final Samples connectLatency = new Samples();
+        final Samples gameStartLatency = new Samples();
+        final Samples roundTripLatency = new Samples();
+        final Samples handoffLatency = new Samples();
+        final Samples cycleLatency = new Samples();
+
+        Loop(int matches, int concurrency, Random random) throws IOException {
+            this.selector = Selector.open();
+            this.pairsLeft = matches;
+            this.concurrency = concurrency;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            long nextTimeoutCheck = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            try {
+                while (pairsLeft > 0 || !pairs.isEmpty()) {
+                    while (pairsLeft > 0 && pairs.size() < concurrency) {
+                        pairsLeft--;
+                        Client[] pair = new Client[2];
+                        pairs.add(pair);
+                        pair[0] = new Client(this, pair);
+                        pair[1] = new Client(this, pair);
+                        // either client may have failed to connect already
+                        finished(pair);
+                    }
+                    long timeoutMillis = 1000;
+                    if (!thinking.isEmpty()) {
+                        timeoutMillis = Math.max(1,
+                                TimeUnit.NANOSECONDS.toMillis(thinking.peek().moveDueAt - System.nanoTime()));
+                    }
+                    selector.select(timeoutMillis);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((Client) key.attachment()).handle(key);
+                    }
+                    long now = System.nanoTime();
+                    while (!thinking.isEmpty() && thinking.peek().moveDueAt - now <= 0) {
+                        thinking.poll().move();
+                    }
+                    if (now - nextTimeoutCheck >= 0) {
+                        expireMatches(now);
+                        nextTimeoutCheck = now + TimeUnit.SECONDS.toNanos(1);
+                    }
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Load generator loop failed: " + e);
+            }
+        }
+
+        private void expireMatches(long now) {
+            for (Client[] pair : new ArrayList<>(pairs)) {
+                for (Client client : pair) {
+                    if (!client.done && now - client.startedAt > matchTimeoutNanos) {
+                        timeouts.increment();
+                        client.finish();
+                    }
+                }
+            }
+        }
+
+        void finished(Client[] pair) {
+            if (pair[0] != null && pair[1] != null && pair[0].done && pair[1].done) {
+                pairs.remove(pair);
+            }
+        }
+    }
+
+    /**
+     * One player. It only keeps what it needs to pick legal moves: how full each column is.
+     */
+    private class Client {
+
+        private final Loop loop;
+        private final Client[] pair;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final long startedAt = System.nanoTime();
+        private ByteBuffer pendingWrite;
+
+        private final int[] heights = new int[BitBoard.COLUMNS];
+        private int discs;
+        private boolean connected;
+        private boolean gameStarted;
+        private long moveSentAt;
+        // when our last move was sent, and when the opponent's last move arrived, 0 once they've been counted
+        private long lastMoveSentAt;
+        private long opponentMovedAt;
+        private long moveDueAt;
+        private boolean done;
+
+        // text protocol: the line being read and which board row comes next, -1 outside a board
+        private final StringBuilder line = new StringBuilder();
+        private int boardRow = -1;
+        // binary protocol: a message that has only partly arrived
+        private final ByteBuffer message = ByteBuffer.allocate(BinaryProtocol.BOARD_LENGTH);
+        private int seat;
+
+        Client(Loop loop, Client[] pair) throws IOException {
+            this.loop = loop;
+            this.pair = pair;
+            clientsStarted.increment();
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+            try {
+                if (channel.connect(address)) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    connected();
+                }
+            } catch (IOException e) {
+                connectFailures.increment();
+                finish();
+            }
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (!channel.finishConnect()) {
+                        return;
+                    }
+                    key.interestOps(SelectionKey.OP_READ);
+                    connected();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(null);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+            } catch (IOException e) {
+                if (!connected) {
+                    connectFailures.increment();
+                } else {
+                    disconnects.increment();
+                }
+                finish();
+            }
+        }
+
+        private void connected() throws IOException {
+            connected = true;
+            loop.connectLatency.add(System.nanoTime() - startedAt);
+            write(binary ? BINARY_READY : TEXT_READY);
+        }
+
+        private void read() throws IOException {
+            ByteBuffer buffer = loop.readBuffer;
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read == -1) {
+                // the server closes the connection after the result, a close before that is a dropped match
+                if (!done) {
+                    disconnects.increment();
+                    finish();
+                }
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining() && !done) {
+                if (binary) {
+                    readBinary(buffer);
+                } else {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        textLine(line);
+                        line.setLength(0);
+                    } else {
+                        line.append((char) b);
+                    }
+                }
+            }
+        }
+
+        private void textLine(StringBuilder text) {
+            if (text.indexOf("1  2  3") == 0) {
+                // a board once the game is under way, that isn't the answer to our move, is the opponent's move
+                if (gameStarted && moveSentAt == 0) {
+                    opponentMoved();
+                }
+                boardRow = -2;
+            } else if (text.indexOf("====") == 0) {
+                // the line under the column numbers starts the rows, the next one ends them
+                if (boardRow == -2) {
+                    boardRow = 0;
+                    discs = 0;
+                    Arrays.fill(heights, 0);
+                } else {
+                    boardRow = -1;
+                }
+            } else if (boardRow >= 0 && boardRow < BitBoard.ROWS) {
+                for (int column = 0; column < BitBoard.COLUMNS && column * 3 < text.length(); column++) {
+                    if (text.charAt(column * 3) != 'O' && heights[column] == 0) {
+                        heights[column] = BitBoard.ROWS - boardRow;
+                        discs += heights[column];
+                    }
+                }
+                boardRow++;
+            } else if (text.indexOf("Your turn!") >= 0) {
+                started();
+                yourTurn();
+            } else if (text.indexOf("Currently waiting") == 0) {
+                started();
+            } else if (text.indexOf("Opponents turn..") == 0) {
+                acknowledged();
+            } else if (text.indexOf("Column full!") == 0 || text.indexOf("Enter a number") == 0) {
+                protocolErrors.increment();
+            } else if (text.indexOf("You won!") == 0) {
+                wins.increment();
+                finish();
+            } else if (text.indexOf("The opponent has beaten you!") == 0) {
+                finish();
+            } else if (text.indexOf("NO WINNER!") == 0) {
+                draws.increment();
+                finish();
+            } else if (text.indexOf("The opponent has disconnected") == 0) {
+                opponentLeft.increment();
+                finish();
+            }
+        }
+
+        private void readBinary(ByteBuffer buffer) {
+            if (message.position() == 0) {
+                byte type = buffer.get(buffer.position());
+                message.limit(type == BinaryProtocol.BOARD ? BinaryProtocol.BOARD_LENGTH
+                        : BinaryProtocol.MESSAGE_LENGTH);
+            }
+            while (message.hasRemaining() && buffer.hasRemaining()) {
+                message.put(buffer.get());
+            }
+            if (message.hasRemaining()) {
+                return;
+            }
+            byte type = message.get(0);
+            int a = message.get(1), b = message.get(2), c = message.get(3);
+            message.clear();
+            switch (type) {
+                case BinaryProtocol.WELCOME:
+                    seat = a;
+                    break;
+                case BinaryProtocol.TURN:
+                    started();
+                    if (a == seat) {
+                        yourTurn();
+                    }
+                    break;
+                case BinaryProtocol.MOVE:
+                    heights[b]++;
+                    discs++;
+                    if (c == seat) {
+                        acknowledged();
+                    } else {
+                        opponentMoved();
+                    }
+                    break;
+                case BinaryProtocol.ERROR:
+                    protocolErrors.increment();
+                    if (a == BinaryProtocol.ERROR_COLUMN_FULL) {
+                        acknowledged();
+                    }
+                    break;
+                case BinaryProtocol.RESULT:
+                    if (a == BinaryProtocol.RESULT_WON) {
+                        wins.increment();
+                    } else if (a == BinaryProtocol.RESULT_DRAW) {
+                        draws.increment();
+                    } else if (a == BinaryProtocol.RESULT_OPPONENT_LEFT) {
+                        opponentLeft.increment();
+                    }
+                    finish();
+                    break;
+                default:
+                    // BOARD is only sent at the start, when the board is still empty
+            }
+        }
+
+        private void started() {
+            if (!gameStarted) {
+                gameStarted = true;
+                loop.gameStartLatency.add(System.nanoTime() - startedAt);
+            }
+        }
+
+        private void opponentMoved() {
+            opponentMovedAt = System.nanoTime();
+        }
+
+        private void yourTurn() {
+            long now = System.nanoTime();
+            if (opponentMovedAt != 0) {
+                loop.handoffLatency.add(now - opponentMovedAt);
+                opponentMovedAt = 0;
+            }
+            if (lastMoveSentAt != 0) {
+                loop.cycleLatency.add(now - lastMoveSentAt);
+                lastMoveSentAt = 0;
+            }
+            if (thinkNanos == 0) {
+                move();
+            } else {
+                moveDueAt = System.nanoTime() + thinkNanos;
+                loop.thinking.add(this);
+            }
+        }
+
+        void move() {
+            if (done) {
+                return;
+            }
+            int column = discs < script.length ? script[discs] : -1;
+            if (column == -1 || heights[column] >= BitBoard.ROWS) {
+                column = loop.random.nextInt(BitBoard.COLUMNS);
+                while (heights[column] >= BitBoard.ROWS) {
+                    column = (column + 1) % BitBoard.COLUMNS;
+                }
+            }
+            byte[] command = binary ? BinaryProtocol.clientMessage(BinaryProtocol.CLIENT_MOVE, column)
+                    : ((column + 1) + "\n").getBytes(StandardCharsets.US_ASCII);
+            try {
+                moveSentAt = System.nanoTime();
+                lastMoveSentAt = moveSentAt;
+                write(command);
+            } catch (IOException e) {
+                disconnects.increment();
+                finish();
+            }
+        }
+
+        private void acknowledged() {
+            if (moveSentAt != 0) {
+                loop.roundTripLatency.add(System.nanoTime() - moveSentAt);
+                movesPlayed.increment();
+                moveSentAt = 0;
+            }
+        }
+
+        /**
+         * Writes straight to the socket, anything that doesn't fit is sent when the socket is writable again.
+         *
+         * @param bytes - the bytes to send, or null to carry on with what's pending
+         */
+        private void write(byte[] bytes) throws IOException {
+            if (bytes != null) {
+                if (pendingWrite != null) {
+                    ByteBuffer joined = ByteBuffer.allocate(pendingWrite.remaining() + bytes.length);
+                    pendingWrite = joined.put(pendingWrite).put(bytes).flip();
+                } else {
+                    pendingWrite = ByteBuffer.wrap(bytes);
+                }
+            }
+            channel.write(pendingWrite);
+            if (pendingWrite.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                pendingWrite = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void finish() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing left to clean up
+            }
+            loop.finished(pair);
+        }
+    }
+
+    /**
+     * Latency samples in nanoseconds. Every sample is kept so the percentiles are exact.
+     */
+    private static class Samples {
+
+        private long[] values = new long[1024];
+        private int count;
+
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        double meanNanos() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += values[i];
+            }
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        private double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return values[Math.max(0, Math.min(count - 1, index))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "no samples";
+            }
+            Arrays.sort(values, 0, count);
+            return String.format("p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms (%d samples)",
+                    percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(99.9),
+                    values[count - 1] / 1e6, count);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.company.benchmarks;
+
+import com.company.BitBoard;
+import com.company.BoardRenderer;
+import com.company.Player;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the original per-cell showBoard() with BoardRenderer. Both replay the same random games (played until the
+ * board is full) and send the board to both players after every move, into streams that count bytes and write calls.
+ * Every write call on a socket's stream is one send() syscall, so the write count is the number of syscalls a real
+ * connection would make.
+ *
+ * The original also printed every cell to System.out, that's counted separately as console writes.
+ */
+public class RenderBenchmark {
+
+    private static final int GAMES = 20_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int round = 1; round <= ROUNDS; round++) {
+            // the early rounds are JIT warm-up, only the last one is worth reading
+            System.out.println("Round " + round + " of " + ROUNDS);
+            report("showBoard (original)", legacy());
+            report("BoardRenderer", batched());
+        }
+    }
+
+    /**
+     * A copy of showBoard() from before BoardRenderer, writing to an autoflushing PrintWriter like the server did.
+     */
+    private static void legacyShowBoard(char[][] board, PrintWriter terminalOutput, PrintStream console) {
+        terminalOutput.println("1  2  3  4  5  6  7 ");
+        terminalOutput.println("====================");
+        console.println("====================");
+        for (int row = 0; row < board.length; row++) {
+            for (int column = 0; column < board[row].length; column++) {
+                console.print(board[row][column] + "  ");
+                terminalOutput.print(board[row][column] + "  ");
+            }
+            console.println();
+            terminalOutput.println();
+        }
+        console.println("====================");
+        terminalOutput.println("====================");
+    }
+
+    private static Result legacy() {
+        CountingStream socket = new CountingStream();
+        CountingStream consoleStream = new CountingStream();
+        PrintWriter terminalOutput = new PrintWriter(socket, true);
+        PrintStream console = new PrintStream(consoleStream, true);
+        Random random = new Random(42);
+        long moves = 0;
+        long started = System.nanoTime();
+        for (int game = 0; game < GAMES; game++) {
+            BitBoard board = new BitBoard();
+            char[][] cells = new char[BitBoard.ROWS][BitBoard.COLUMNS];
+            for (char[] row : cells) {
+                Arrays.fill(row, 'O');
+            }
+            for (int turn = 0; !board.isFull(); turn = 1 - turn) {
+                int column = random.nextInt(BitBoard.COLUMNS);
+                int row = board.play(column, turn);
+                if (row == -1) {
+                    continue;
+                }
+                cells[row][column] = turn == 0 ? 'R' : 'Y';
+                // the mover and the opponent both get the board
+                legacyShowBoard(cells, terminalOutput, console);
+                legacyShowBoard(cells, terminalOutput, console);
+                moves++;
+            }
+        }
+        return new Result(moves, System.nanoTime() - started, socket, consoleStream);
+    }
+
+    private static Result batched() {
+        CountingStream socket = new CountingStream();
+        BoardRenderer moverRenderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+        BoardRenderer opponentRenderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+        Random random = new Random(42);
+        long moves = 0;
+        long started = System.nanoTime();
+        for (int game = 0; game < GAMES; game++) {
+            BitBoard board = new BitBoard();
+            for (int turn = 0; !board.isFull(); turn = 1 - turn) {
+                int column = random.nextInt(BitBoard.COLUMNS);
+                if (board.play(column, turn) == -1) {
+                    continue;
+                }
+                socket.write(moverRenderer.render(board));
+                socket.write(opponentRenderer.render(board));
+                moves++;
+            }
+        }
+        return new Result(moves, System.nanoTime() - started, socket, new CountingStream());
+    }
+
+    private static void report(String name, Result result) {
+        System.out.printf("  %-22s %8.1f bytes/move %6.1f socket writes/move %6.1f console writes/move %8.0f ns/move%n",
+                name,
+                (double) result.socket.bytes / result.moves,
+                (double) result.socket.writes / result.moves,
+                (double) result.console.writes / result.moves,
+                (double) result.nanos / result.moves);
+    }
+
+    private static class Result {
+        final long moves, nanos;
+        final CountingStream socket, console;
+
+        Result(long moves, long nanos, CountingStream socket, CountingStream console) {
+            this.moves = moves;
+            this.nanos = nanos;
+            this.socket = socket;
+            this.console = console;
+        }
+    }
+
+    /**
+     * Stands in for a socket's output stream, throwing the bytes away but counting them and the write calls.
+     */
+    private static class CountingStream extends OutputStream {
+        long bytes, writes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            writes++;
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            writes++;
+        }
+    }
+}
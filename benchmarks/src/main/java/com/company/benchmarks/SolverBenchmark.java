@@ -0,0 +1,125 @@
+package com.company.benchmarks;
+
+import com.company.BitBoard;
+import com.company.Solver;
+import com.company.TranspositionTable;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the computer opponent, to size how many single player games a server can host.
+ *
+ * openings: a fixed depth search from well known early positions, reported as searches per second plus nodes per
+ * second (the "nodes" counter).
+ * endgames: the time the solver needs to prove the result of mid-game positions, searching until it's certain.
+ *
+ * Positions are the columns played so far, starting at 1, the same numbers a player types.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SolverBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Opening {
+
+        @Param({"", "4", "44", "4453"})
+        public String moves;
+
+        @Param({"12"})
+        public int depth;
+
+        BitBoard board;
+        Solver solver;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            board = replay(moves);
+        }
+
+        // every search starts with an empty cache, otherwise only the first one would do any work
+        @Setup(Level.Invocation)
+        public void newSolver() {
+            solver = new Solver(new TranspositionTable(18), ForkJoinPool.commonPool(), depth, TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Endgame {
+
+        @Param({"175337421374135331122147", "451266567521615111553674", "2112265573273422"})
+        public String moves;
+
+        BitBoard board;
+        Solver solver;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            board = replay(moves);
+        }
+
+        @Setup(Level.Invocation)
+        public void newSolver() {
+            solver = new Solver(new TranspositionTable(18), ForkJoinPool.commonPool(),
+                    BitBoard.ROWS * BitBoard.COLUMNS, TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    /**
+     * Nodes searched, reported by JMH as nodes per second next to the benchmark's own score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int openings(Opening opening, Nodes counter) {
+        int column = opening.solver.bestMove(opening.board, opening.board.getMovesPlayed() % 2);
+        counter.nodes += opening.solver.getLastNodes();
+        return column;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int endgames(Endgame endgame, Nodes counter) {
+        int column = endgame.solver.bestMove(endgame.board, endgame.board.getMovesPlayed() % 2);
+        counter.nodes += endgame.solver.getLastNodes();
+        return column;
+    }
+
+    /**
+     * Plays a sequence of columns from an empty board.
+     *
+     * @throws IllegalStateException if a column is full or the game is already over, so a bad position fails
+     * the benchmark instead of measuring nothing
+     */
+    static BitBoard replay(String moves) {
+        BitBoard board = new BitBoard();
+        for (int i = 0; i < moves.length(); i++) {
+            int player = i % 2;
+            if (board.play(moves.charAt(i) - '1', player) == -1 || board.hasWon(player)) {
+                throw new IllegalStateException("Not a playable position: " + moves);
+            }
+        }
+        return board;
+    }
+}
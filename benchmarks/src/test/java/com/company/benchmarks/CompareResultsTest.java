@@ -0,0 +1,79 @@
+package com.company.benchmarks;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompareResultsTest {
+
+    // trimmed down from a real 'gradle :benchmarks:jmh' run
+    private static final String RESULTS = "[\n"
+            + "  {\n"
+            + "    \"jmhVersion\" : \"1.37\",\n"
+            + "    \"benchmark\" : \"com.company.benchmarks.BoardBenchmark.checkWinner\",\n"
+            + "    \"mode\" : \"avgt\",\n"
+            + "    \"params\" : { \"phase\" : \"endgame\" },\n"
+            + "    \"primaryMetric\" : {\n"
+            + "      \"score\" : 12.5,\n"
+            + "      \"scoreError\" : \"NaN\",\n"
+            + "      \"scoreUnit\" : \"ns/op\"\n"
+            + "    },\n"
+            + "    \"secondaryMetrics\" : {\n"
+            + "      \"gc.alloc.rate.norm\" : { \"score\" : 1.0E-4, \"scoreUnit\" : \"B/op\" }\n"
+            + "    }\n"
+            + "  },\n"
+            + "  {\n"
+            + "    \"benchmark\" : \"com.company.benchmarks.RenderBenchmark.render\",\n"
+            + "    \"jvmArgs\" : [ \"-Xmx1g\", \"-Dtrue=\\\"yes\\\"\" ],\n"
+            + "    \"warmupTime\" : null,\n"
+            + "    \"forks\" : true,\n"
+            + "    \"primaryMetric\" : { \"score\" : 3, \"scoreError\" : 0.25, \"scoreUnit\" : \"us/op\" }\n"
+            + "  }\n"
+            + "]\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEveryRunByNameAndParameters() throws IOException {
+        Map<String, JsonObject> runs = CompareResults.load(write(RESULTS));
+
+        assertEquals(List.of("BoardBenchmark.checkWinner:phase=endgame", "RenderBenchmark.render"),
+                List.copyOf(runs.keySet()));
+        JsonObject checkWinner = runs.get("BoardBenchmark.checkWinner:phase=endgame").getAsJsonObject("primaryMetric");
+        assertEquals(12.5, CompareResults.number(checkWinner, "score"));
+        assertTrue(Double.isNaN(CompareResults.number(checkWinner, "scoreError")));
+        JsonObject render = runs.get("RenderBenchmark.render").getAsJsonObject("primaryMetric");
+        assertEquals(0.25, CompareResults.number(render, "scoreError"));
+    }
+
+    @Test
+    void rejectsFilesThatArentJmhResults() throws IOException {
+        // truncated part way through, the way a run that was stopped early leaves the file
+        Path truncated = write(RESULTS.substring(0, RESULTS.indexOf("\"forks\" : tr") + 12));
+        assertThrows(IOException.class, () -> CompareResults.load(truncated));
+        // a misspelled literal that a parser skipping a fixed number of characters would accept
+        Path misspelled = write(RESULTS.replace("\"forks\" : true", "\"forks\" : tru3"));
+        assertThrows(IOException.class, () -> CompareResults.load(misspelled));
+        Path notAList = write("{ \"benchmark\" : \"x.y.z\" }");
+        assertThrows(IOException.class, () -> CompareResults.load(notAList));
+        Path noScore = write("[ { \"benchmark\" : \"com.company.benchmarks.A.b\" } ]");
+        assertThrows(IOException.class, () -> CompareResults.load(noScore));
+    }
+
+    private Path write(String json) throws IOException {
+        Path file = Files.createTempFile(directory, "results", ".json");
+        Files.writeString(file, json);
+        return file;
+    }
+}
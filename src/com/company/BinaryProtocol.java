@@ -0,0 +1,175 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+/**
+ * Compact framed protocol for bots and load generators. A client picks it by sending MAGIC as its very first byte,
+ * which can never start a line typed into nc.
+ *
+ * Client to server, 2 bytes per message: [type, argument]
+ * <pre>
+ *   READY  [0x01, 0]
+ *   MOVE   [0x02, column]      column is 0 to 6
+ * </pre>
+ *
+ * Server to client, every message is a fixed size for its type:
+ * <pre>
+ *   WELCOME [0x10, seat, 0, 0]                      4 bytes, seat 0 is player 1. Sent once the client is ready and
+ *                                                   has been paired, straight before BOARD
+ *   BOARD   [0x11, seat, player 1 discs, player 2 discs]
+ *                                                   18 bytes, sent once when the game starts. The discs are the
+ *                                                   BitBoard longs, big endian
+ *   MOVE    [0x12, row, column, seat]               4 bytes, row 0 is the top row
+ *   TURN    [0x13, seat, 0, 0]                      4 bytes, seat is the player who moves next
+ *   RESULT  [0x14, outcome, 0, 0]                   4 bytes, one of the RESULT_ values, then the server disconnects.
+ *                                                   RESULT_KICKED is sent to a client that broke the InputLimits
+ *                                                   or ran out of time
+ *   ERROR   [0x15, code, 0, 0]                      4 bytes, one of the ERROR_ values
+ * </pre>
+ */
+public class BinaryProtocol implements WireProtocol {
+
+    public static final byte MAGIC = (byte) 0xC4;
+
+    public static final byte CLIENT_READY = 0x01;
+    public static final byte CLIENT_MOVE = 0x02;
+
+    public static final byte WELCOME = 0x10;
+    public static final byte BOARD = 0x11;
+    public static final byte MOVE = 0x12;
+    public static final byte TURN = 0x13;
+    public static final byte RESULT = 0x14;
+    public static final byte ERROR = 0x15;
+
+    public static final int MESSAGE_LENGTH = 4;
+    public static final int BOARD_LENGTH = 18;
+
+    public static final byte RESULT_WON = 0;
+    public static final byte RESULT_LOST = 1;
+    public static final byte RESULT_DRAW = 2;
+    public static final byte RESULT_OPPONENT_LEFT = 3;
+    public static final byte RESULT_KICKED = 4;
+
+    public static final byte ERROR_NOT_READY = 1;
+    public static final byte ERROR_INVALID_COLUMN = 2;
+    public static final byte ERROR_COLUMN_FULL = 3;
+
+    private final NioServer.Connection connection;
+    // the first byte of a client message, or -1 if we're waiting for a new message
+    private int pendingType = -1;
+
+    BinaryProtocol(NioServer.Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Encodes a client message, for bots and load generators.
+     *
+     * @param type     - CLIENT_READY or CLIENT_MOVE
+     * @param argument - the column for CLIENT_MOVE, otherwise 0
+     */
+    public static byte[] clientMessage(byte type, int argument) {
+        return new byte[]{type, (byte) argument};
+    }
+
+    @Override
+    public void read(ByteBuffer input, Queue<Integer> commands) {
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (pendingType == -1) {
+                pendingType = b;
+                continue;
+            }
+            if (pendingType == CLIENT_READY) {
+                commands.add(READY);
+            } else if (pendingType == CLIENT_MOVE && b >= 0) {
+                // the match expects the column the way a person types it, starting at 1
+                commands.add(b + 1);
+            } else {
+                commands.add(OTHER);
+            }
+            pendingType = -1;
+        }
+    }
+
+    private void message(byte type, int a, int b, int c) {
+        connection.send(new byte[]{type, (byte) a, (byte) b, (byte) c});
+    }
+
+    @Override
+    public void welcome() {
+        // nothing to say until there's a seat, a client sends READY as soon as it connects
+    }
+
+    @Override
+    public void readyPrompt(boolean repeat) {
+        if (repeat) {
+            message(ERROR, ERROR_NOT_READY, 0, 0);
+        }
+    }
+
+    @Override
+    public void waitingForOpponent() {
+    }
+
+    @Override
+    public void gameStarted(BitBoard board, int seat) {
+        message(WELCOME, seat, 0, 0);
+        ByteBuffer frame = ByteBuffer.allocate(BOARD_LENGTH);
+        frame.put(BOARD).put((byte) seat).putLong(board.getDiscs(0)).putLong(board.getDiscs(1));
+        connection.send(frame.array());
+    }
+
+    @Override
+    public void yourTurn(int seat) {
+        message(TURN, seat, 0, 0);
+    }
+
+    @Override
+    public void waitingFor(int seat) {
+        message(TURN, seat, 0, 0);
+    }
+
+    @Override
+    public void invalidColumn() {
+        message(ERROR, ERROR_INVALID_COLUMN, 0, 0);
+    }
+
+    @Override
+    public void moved(BitBoard board, int row, int column, int seat, boolean byYou) {
+        message(MOVE, row, column, seat);
+    }
+
+    @Override
+    public void columnFull(BitBoard board, boolean byYou) {
+        if (byYou) {
+            message(ERROR, ERROR_COLUMN_FULL, 0, 0);
+        }
+    }
+
+    @Override
+    public void won() {
+        message(RESULT, RESULT_WON, 0, 0);
+    }
+
+    @Override
+    public void lost() {
+        message(RESULT, RESULT_LOST, 0, 0);
+    }
+
+    @Override
+    public void draw() {
+        message(RESULT, RESULT_DRAW, 0, 0);
+    }
+
+    @Override
+    public void opponentLeft() {
+        message(RESULT, RESULT_OPPONENT_LEFT, 0, 0);
+    }
+
+    @Override
+    public void kicked(String reason) {
+        message(RESULT, RESULT_KICKED, 0, 0);
+    }
+}
@@ -0,0 +1,238 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard implementation of the Connect 4 board. Each player's discs are stored as a bitset of 64-bit longs, where
+ * every column takes up rows + 1 bits (the playable rows plus one empty "sentinel" bit on top). Because of the
+ * sentinel bit, shifting a bitboard never wraps a line of discs from the top of one column into the bottom of the
+ * next, which lets a win be found with a few shifts and masks instead of scanning the whole board.
+ *
+ * The standard 6 by 7 board fits in one long per player. Bigger boards and other win lengths (see BoardGeometry)
+ * use as many longs as they need, and only check the lines through the last disc played, so the cost of a move
+ * grows with the win length rather than the size of the board.
+ *
+ * Bit layout of the standard board (bit index = column * 7 + row, where row 0 is the bottom of the board):
+ * <pre>
+ *   6 13 20 27 34 41 48   <- sentinel row, always empty
+ *   5 12 19 26 33 40 47
+ *   4 11 18 25 32 39 46
+ *   3 10 17 24 31 38 45
+ *   2  9 16 23 30 37 44
+ *   1  8 15 22 29 36 43
+ *   0  7 14 21 28 35 42
+ * </pre>
+ */
+public class BitBoard {
+
+    // the standard board, which the computer opponent and the NIO server's binary protocol are built around
+    public static final int ROWS = 6;
+    public static final int COLUMNS = 7;
+    public static final int EMPTY = -1;
+
+    // the four directions a line can run in, as column and row steps: vertical, horizontal and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final BoardGeometry geometry;
+    private final int rows, columns, winLength, columnHeight, words;
+    // true when the whole board fits in one long per player and 4 wins, so the shift check works
+    private final boolean singleWord;
+
+    // player 1's discs are words 0 to words - 1, player 2's come straight after
+    private final long[] discs;
+    // height[column] is the bit index of the next free cell in that column
+    private final int[] height;
+    private int movesPlayed;
+    private int lastBit = -1, lastPlayer = -1;
+
+    /**
+     * The standard 6 by 7 board with 4 to win.
+     */
+    public BitBoard() {
+        this(BoardGeometry.STANDARD);
+    }
+
+    public BitBoard(BoardGeometry geometry) {
+        this.geometry = geometry;
+        rows = geometry.getRows();
+        columns = geometry.getColumns();
+        winLength = geometry.getWinLength();
+        columnHeight = rows + 1;
+        words = (columns * columnHeight + 63) / 64;
+        singleWord = words == 1 && winLength == 4;
+        discs = new long[2 * words];
+        height = new int[columns];
+        reset();
+    }
+
+    /**
+     * Empties the board, so every cell goes back to being a placeholder.
+     */
+    public void reset() {
+        Arrays.fill(discs, 0L);
+        for (int column = 0; column < columns; column++) {
+            height[column] = column * columnHeight;
+        }
+        movesPlayed = 0;
+        lastBit = -1;
+        lastPlayer = -1;
+    }
+
+    /**
+     * Drops a disc for the given player into a column. The height index means this is a single lookup instead of
+     * checking each row from the bottom up.
+     *
+     * @param column - the column to drop into, 0 to 6 on the standard board
+     * @param player - 0 for player 1, 1 for player 2
+     * @return the row the disc landed in (0 is the top row, the same as the old char[6][7] board), or -1 if the
+     * column is already full
+     * @throws ArrayIndexOutOfBoundsException if the column isn't on the board
+     */
+    public int play(int column, int player) {
+        if (column < 0 || column >= columns) {
+            throw new ArrayIndexOutOfBoundsException("Column " + column + " is not on the board");
+        }
+        int bit = height[column];
+        int rowFromBottom = bit - column * columnHeight;
+        if (rowFromBottom == rows) {
+            return -1;
+        }
+        discs[player * words + (bit >>> 6)] |= 1L << bit;
+        height[column] = bit + 1;
+        movesPlayed++;
+        lastBit = bit;
+        lastPlayer = player;
+        return rows - 1 - rowFromBottom;
+    }
+
+    /**
+     * @param column - the column to check
+     * @return true if there's still room in the column
+     */
+    public boolean canPlay(int column) {
+        return column >= 0 && column < columns && height[column] - column * columnHeight < rows;
+    }
+
+    /**
+     * Checks whether the player has connected enough discs vertically, horizontally or on either diagonal.
+     *
+     * When the board fits in one long and 4 wins, every direction is checked in one pass: the bitboard is shifted by
+     * the distance between two neighbouring cells in that direction, 1 for vertical, rows + 1 for horizontal, rows
+     * for a diagonal going up to the left and rows + 2 for a diagonal going up to the right. ANDing the board with
+     * itself shifted once leaves the pairs, and doing it again with double the shift leaves 4 in a row.
+     *
+     * On any other board only the lines through the last disc played are counted, since a win can only have been
+     * made by the move just played. This is checked after every move, so it's the same answer.
+     *
+     * @param player - 0 for player 1, 1 for player 2
+     * @return true if the player has connected enough to win
+     */
+    public boolean hasWon(int player) {
+        if (singleWord) {
+            long board = discs[player * words];
+            return connected(board, 1) || connected(board, columnHeight)
+                    || connected(board, columnHeight - 1) || connected(board, columnHeight + 1);
+        }
+        return player == lastPlayer && connectsThroughLastDisc();
+    }
+
+    private static boolean connected(long board, int shift) {
+        long pairs = board & (board >>> shift);
+        return (pairs & (pairs >>> (2 * shift))) != 0;
+    }
+
+    /**
+     * Counts the last player's discs outwards from the last disc in each direction, at most winLength - 1 steps
+     * each way.
+     */
+    private boolean connectsThroughLastDisc() {
+        int column = lastBit / columnHeight;
+        int row = lastBit % columnHeight;
+        for (int[] direction : DIRECTIONS) {
+            int inLine = 1 + countFrom(column, row, direction[0], direction[1])
+                    + countFrom(column, row, -direction[0], -direction[1]);
+            if (inLine >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int countFrom(int column, int row, int columnStep, int rowStep) {
+        int count = 0;
+        int offset = lastPlayer * words;
+        for (int step = 1; step < winLength; step++) {
+            column += columnStep;
+            row += rowStep;
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+            int bit = column * columnHeight + row;
+            if ((discs[offset + (bit >>> 6)] & (1L << bit)) == 0) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return true when every column has been filled up to the top row
+     */
+    public boolean isFull() {
+        return movesPlayed == rows * columns;
+    }
+
+    /**
+     * Looks up who owns a cell using the same row numbering as the old char[6][7] board, where row 0 is the top.
+     *
+     * @param row    - 0 (top) to rows - 1 (bottom)
+     * @param column - 0 to columns - 1
+     * @return 0 for player 1, 1 for player 2, or EMPTY if nobody has played there yet
+     */
+    public int occupant(int row, int column) {
+        int bit = column * columnHeight + rows - 1 - row;
+        long mask = 1L << bit;
+        int word = bit >>> 6;
+        if ((discs[word] & mask) != 0) {
+            return 0;
+        } else if ((discs[words + word] & mask) != 0) {
+            return 1;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @return the player's discs in the layout above, for boards that fit in one long
+     * @throws IllegalStateException if the board takes more than one long
+     */
+    public long getDiscs(int player) {
+        if (words != 1) {
+            throw new IllegalStateException("A " + geometry + " board doesn't fit in one long");
+        }
+        return discs[player];
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+
+    /**
+     * @return the player who dropped the last disc, or -1 on an empty board
+     */
+    public int getLastPlayer() {
+        return lastPlayer;
+    }
+}
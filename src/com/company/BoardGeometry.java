@@ -0,0 +1,102 @@
+package com.company;
+
+/**
+ * The size of the board and how many discs in a row win, picked per match. The original game is 6 rows by 7
+ * columns with 4 to win, and players can ask for a variant in the ready check with R and the size, like R 7x8 for
+ * 7 rows by 8 columns, or R 8x9x5 for connect 5 on an 8 by 9 board.
+ */
+public final class BoardGeometry {
+
+    public static final BoardGeometry STANDARD = new BoardGeometry(6, 7, 4);
+
+    // big enough for any variant people actually play, small enough that every row fits on a terminal
+    public static final int MIN_SIZE = 4, MAX_SIZE = 20;
+
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+
+    /**
+     * @param rows      - from MIN_SIZE to MAX_SIZE
+     * @param columns   - from MIN_SIZE to MAX_SIZE
+     * @param winLength - discs in a row needed to win, at least 3 and no more than fit on the board
+     * @throws IllegalArgumentException if the board can't be played on
+     */
+    public BoardGeometry(int rows, int columns, int winLength) {
+        if (rows < MIN_SIZE || rows > MAX_SIZE || columns < MIN_SIZE || columns > MAX_SIZE) {
+            throw new IllegalArgumentException("Boards are " + MIN_SIZE + " to " + MAX_SIZE + " rows and columns");
+        }
+        if (winLength < 3 || winLength > Math.max(rows, columns)) {
+            throw new IllegalArgumentException("Can't connect " + winLength + " on a " + rows + "x" + columns + " board");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+    }
+
+    /**
+     * Reads a size the way players type it: rows x columns, optionally followed by x and the win length.
+     *
+     * @param text - like 7x8 or 8x9x5, or nothing at all for the standard board
+     * @return the geometry
+     * @throws IllegalArgumentException if it isn't a size or the board can't be played on
+     */
+    public static BoardGeometry parse(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return STANDARD;
+        }
+        String[] parts = trimmed.toLowerCase().split("x");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Type the size as rows x columns, like 7x8, or 8x9x5 to connect 5");
+        }
+        try {
+            return new BoardGeometry(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    parts.length == 3 ? Integer.parseInt(parts[2].trim()) : 4);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Type the size as rows x columns, like 7x8, or 8x9x5 to connect 5");
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public int getCells() {
+        return rows * columns;
+    }
+
+    public boolean isStandard() {
+        return equals(STANDARD);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof BoardGeometry)) {
+            return false;
+        }
+        BoardGeometry geometry = (BoardGeometry) other;
+        return rows == geometry.rows && columns == geometry.columns && winLength == geometry.winLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + columns) * 31 + winLength;
+    }
+
+    /**
+     * @return the size the way players type it, like 8x9x5
+     */
+    @Override
+    public String toString() {
+        return rows + "x" + columns + "x" + winLength;
+    }
+}
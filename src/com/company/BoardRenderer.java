@@ -0,0 +1,104 @@
+package com.company;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Draws the board into one reusable byte array so a whole frame can be sent to a player in a single write, instead
+ * of printing every cell separately. Each connection has its own renderer.
+ *
+ * The frame layout only changes with the size of the board (header, one line per row, footer), so the bytes for a
+ * row are only rewritten when the discs in that row have changed since the last frame. After the first frame a move
+ * only rewrites one row.
+ */
+public class BoardRenderer {
+
+    private final byte[] letters = new byte[3];
+
+    // everything below is laid out for the size of board drawn last, and laid out again if it changes
+    private BoardGeometry geometry;
+    private byte[] frame;
+    private int headerLength;
+    // each cell is the letter followed by two spaces, then a newline at the end of the row
+    private int rowLength;
+    // the cells each row was last drawn with, 2 bits per cell. -1 means the row hasn't been drawn yet
+    private long[] rowKeys;
+
+    /**
+     * @param p           - the letters used for player 1 and player 2
+     * @param placeHolder - the letter used for an empty cell
+     */
+    public BoardRenderer(Player p, char placeHolder) {
+        letters[0] = (byte) p.getPlayerOne();
+        letters[1] = (byte) p.getPlayerTwo();
+        letters[2] = (byte) placeHolder;
+    }
+
+    /**
+     * Lays the frame out for a board size: the column numbers, a line of = the width of the board, the rows and
+     * another line of =. On the standard board that's exactly the frame the game has always sent.
+     */
+    private void layOut(BoardGeometry geometry) {
+        this.geometry = geometry;
+        int columns = geometry.getColumns();
+        StringBuilder numbers = new StringBuilder();
+        for (int column = 1; column <= columns; column++) {
+            numbers.append(column);
+            if (column < columns) {
+                numbers.append(column < 10 ? "  " : " ");
+            }
+        }
+        char[] line = new char[columns * 3 - 1];
+        Arrays.fill(line, '=');
+        String bar = new String(line) + "\n";
+        byte[] header = (numbers + " \n" + bar).getBytes(StandardCharsets.US_ASCII);
+        byte[] footer = bar.getBytes(StandardCharsets.US_ASCII);
+
+        headerLength = header.length;
+        rowLength = columns * 3 + 1;
+        frame = new byte[headerLength + geometry.getRows() * rowLength + footer.length];
+        System.arraycopy(header, 0, frame, 0, headerLength);
+        System.arraycopy(footer, 0, frame, frame.length - footer.length, footer.length);
+        for (int row = 0; row < geometry.getRows(); row++) {
+            int rowStart = headerLength + row * rowLength;
+            Arrays.fill(frame, rowStart, rowStart + rowLength - 1, (byte) ' ');
+            frame[rowStart + rowLength - 1] = '\n';
+        }
+        rowKeys = new long[geometry.getRows()];
+        Arrays.fill(rowKeys, -1);
+    }
+
+    /**
+     * Brings the frame up to date with the board. The returned array is reused by the next call, so it has to be
+     * written out before rendering again.
+     *
+     * @param board - the board to draw
+     * @return the frame
+     */
+    public byte[] render(BitBoard board) {
+        if (!board.getGeometry().equals(geometry)) {
+            layOut(board.getGeometry());
+        }
+        int rows = board.getRows();
+        int columns = board.getColumns();
+        for (int row = 0; row < rows; row++) {
+            long key = 0;
+            for (int column = 0; column < columns; column++) {
+                key = (key << 2) | cellIndex(board.occupant(row, column));
+            }
+            if (key != rowKeys[row]) {
+                rowKeys[row] = key;
+                int cell = headerLength + row * rowLength;
+                for (int column = columns - 1; column >= 0; column--) {
+                    frame[cell + column * 3] = letters[(int) (key & 3)];
+                    key >>>= 2;
+                }
+            }
+        }
+        return frame;
+    }
+
+    private static int cellIndex(int occupant) {
+        return occupant == BitBoard.EMPTY ? 2 : occupant;
+    }
+}
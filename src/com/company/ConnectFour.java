@@ -1,11 +1,11 @@
 package com.company;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.Arrays;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /*
     Name: Ameen Khawaja
@@ -28,246 +28,358 @@ import java.util.Arrays;
 
  */
 /*
- * This entire class is responsible for implementing Connect 4 and separating it into a thread to handle
+ * This entire class is responsible for implementing Connect 4 and separating it into a task to handle
  * input/output over sockets. Instead of a traditional GUI, I implemented the gameplay of Connect 4 to be
  * terminal player vs terminal player. Run the java file and type 'nc localhost 1024' in the terminal to begin
  */
 
 public class ConnectFour {
 
-    public static class ConnectionThread extends Thread {
+    /**
+     * One match between two players. It's a Runnable rather than a Thread so the server can decide what runs it,
+     * a pool of platform threads or one virtual thread per match (see MatchExecutors).
+     */
+    public static class ConnectionThread implements Runnable {
 
         Player p = new Player('R', 'Y');
-        private final char[][] board = new char[6][7];
-        private final char boardPlaceHolder = 'O';
+        private final BitBoard board;
         private boolean isWinnerDecided, playerOneTurn = true, playerTwoTurn = true,
-                isPlayerOneWinner, isPlayerTwoWinner;
+                isPlayerOneWinner, isPlayerTwoWinner, isDraw;
         private int terminalColInput, terminalInputIndexed;
-        private final Socket client1, client2;
-        String playerOneReadyStatus, playerTwoReadyStatus;
+        // a player's connection changes if they drop and come back
+        private PlayerConnection client1, client2;
+        // plays as player 2 in single player matches, otherwise null
+        private final Solver computer;
+        // in single player matches anything meant for player 2 is thrown away
+        private final PrintWriter computerOutput = new PrintWriter(OutputStream.nullOutputStream());
+        // lets each player come back if their connection drops, null for a seat that can't
+        private final SessionRegistry.Session[] sessions = new SessionRegistry.Session[2];
+        private SessionRegistry sessionRegistry;
+        private long reconnectGraceMillis;
+        // a match recovered from the journal to carry on with, or null for a new match
+        private GameRecord resumeFrom;
+        private boolean abandoned;
+        // when the player whose turn it is has to have moved by, 0 until their turn has started
+        private long turnDeadline;
+        // everyone watching this match, or null if it can't be watched
+        private SpectatorBroadcast spectators;
+        // records every move, see GameJournal
+        private GameJournal journal = GameJournal.disabled();
+        private long matchId;
+        private boolean resultJournalled;
+
+        private final ServerMetrics metrics = ServerMetrics.get();
 
-        public ConnectionThread(Socket c1, Socket c2) {
+        /**
+         * Both players have already typed R in the Matchmaker's ready check, so the game starts straight away.
+         *
+         * @param c1 - player 1, who gets the first move
+         * @param c2 - player 2
+         */
+        public ConnectionThread(PlayerConnection c1, PlayerConnection c2) {
+            this(c1, c2, BoardGeometry.STANDARD);
+        }
+
+        /**
+         * A match on a board other than the standard 6 by 7, which both players asked for in the ready check.
+         *
+         * @param c1       - player 1, who gets the first move
+         * @param c2       - player 2
+         * @param geometry - the size of the board and how many in a row win
+         */
+        public ConnectionThread(PlayerConnection c1, PlayerConnection c2, BoardGeometry geometry) {
             client1 = c1;
             client2 = c2;
+            computer = null;
+            board = new BitBoard(geometry);
         }
 
         /**
-         * This method is responsible for printing out an output of the board each time the
-         * user inputs a number.
+         * A single player match against the computer. The player goes first, and the computer takes player 2's seat.
          *
-         * @param board          - 2d-array that contains the current state of connect 4 board
-         * @param terminalOutput - prints out result to terminal
+         * @param c1       - the player, who has already picked a difficulty in the Matchmaker's ready check
+         * @param computer - the solver that picks player 2's moves
          */
-        public void showBoard(char[][] board, PrintWriter terminalOutput) {
-            terminalOutput.println("1  2  3  4  5  6  7 ");
-            terminalOutput.println("====================");
-            System.out.println("====================");
-            for (int row = 0; row < board.length; row++) {
-                for (int column = 0; column < board[row].length; column++) {
-                    System.out.print(board[row][column] + "  ");
-                    terminalOutput.print(board[row][column] + "  ");
-                }
-                System.out.println();
-                terminalOutput.println();
-            }
-            System.out.println("====================");
-            terminalOutput.println("====================");
+        public ConnectionThread(PlayerConnection c1, Solver computer) {
+            client1 = c1;
+            client2 = null;
+            this.computer = computer;
+            // the computer only knows the standard board
+            board = new BitBoard();
         }
 
         /**
-         * This method is responsible for showing the blueprint of the board, I used the letter 'O'
-         * to act as a placeholder until the user fills it up with either letter R or Y
+         * Lets other players watch this match. Call before the match starts.
          *
-         * @param board - fills the 2d-array with all 'O' as the placeholder values
+         * @param spectators - sends every move to the match's watchers
          */
-        public void fillBoard(char[][] board) {
-            for (char[] row : board) {
-                Arrays.fill(row, boardPlaceHolder);
-            }
+        public void setSpectators(SpectatorBroadcast spectators) {
+            this.spectators = spectators;
         }
 
         /**
-         * This method is responsible for placing player 1 or player 2's input into the board and printing
-         * out the result right as they've chosen what column to insert into. I basically brute force each column
-         * by checking bottom to top, while it may not be the most efficient, it's the only implementation I could get
-         * to work.
+         * Records this match's moves and result in the journal. Call before the match starts.
          *
-         * @param board          - the 2d-array/board we want to place a letter into
-         * @param insertInColumn - keeps track of the column number the user wants to insert into
-         * @param letter         - stores either player 1 'R' or player 2 'Y' as a char
-         * @param terminalOutput - prints out result to terminal
+         * @param journal - the server's journal
+         * @param matchId - the number the journal gave this match when it started
          */
-        public void placePiece(char[][] board, int insertInColumn, char letter, PrintWriter terminalOutput) {
-            if (board[5][insertInColumn] == boardPlaceHolder) {
-                board[5][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[4][insertInColumn] == boardPlaceHolder) {
-                board[4][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[3][insertInColumn] == boardPlaceHolder) {
-                board[3][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[2][insertInColumn] == boardPlaceHolder) {
-                board[2][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[1][insertInColumn] == boardPlaceHolder) {
-                board[1][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[0][insertInColumn] == boardPlaceHolder) {
-                board[0][insertInColumn] = letter;
-                showBoard(board, terminalOutput);
-            } else if (board[0][insertInColumn] != boardPlaceHolder) {
-                System.out.println("Column full! Try placing in a different column!");
-                terminalOutput.println("Column full! Try placing in a different column!");
-            }
+        public void setJournal(GameJournal journal, long matchId) {
+            this.journal = journal;
+            this.matchId = matchId;
         }
 
         /**
-         * This method checks each column vertically for a match of 4 of the same letters. My logic behind
-         * checking for a vertical match is to get the most recent letter placed into the board, then check the other
-         * rows in that column by incrementing the row by 1 more each time
+         * Lets players whose connection drops come back to this match. Call before the match starts.
          *
-         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y'
+         * @param registry    - where the sessions were opened, they're closed when the match is over
+         * @param playerOne   - player 1's session
+         * @param playerTwo   - player 2's session, or null in single player matches
+         * @param graceMillis - how long the match waits for a player to come back before it's abandoned
          */
-        public void checkVertical(char playerOneOrPlayerTwo) {
-            try {
-                for (int row = 0; row < board.length; row++) {
-                    for (int column = 0; column < board[row].length; column++) {
-                        if (board[row][column] == playerOneOrPlayerTwo
-                                && board[row + 1][column] == playerOneOrPlayerTwo
-                                && board[row + 2][column] == playerOneOrPlayerTwo
-                                && board[row + 3][column] == playerOneOrPlayerTwo) {
-                            isWinnerDecided = true;
-                            if (playerOneOrPlayerTwo == 'R') {
-                                isPlayerOneWinner = true;
-                            } else if (playerOneOrPlayerTwo == 'Y') {
-                                isPlayerTwoWinner = true;
-                            }
-                        }
+        public void setSessions(SessionRegistry registry, SessionRegistry.Session playerOne,
+                                SessionRegistry.Session playerTwo, long graceMillis) {
+            sessionRegistry = registry;
+            sessions[0] = playerOne;
+            sessions[1] = playerTwo;
+            reconnectGraceMillis = graceMillis;
+        }
+
+        /**
+         * Carries on a match the journal recovered after a restart instead of starting a new one. Call before the
+         * match starts.
+         *
+         * @param game - the moves played so far
+         */
+        public void resume(GameRecord game) {
+            resumeFrom = game;
+        }
+
+        public BoardGeometry getGeometry() {
+            return board.getGeometry();
+        }
+
+        private PlayerConnection client(int seat) {
+            return seat == 0 ? client1 : client2;
+        }
+
+        private PrintWriter output(int seat) {
+            PlayerConnection player = client(seat);
+            return player == null ? computerOutput : player.getOutput();
+        }
+
+        /**
+         * Reads the next line from a player. If their connection drops, the match waits for them to come back with
+         * their session token and reads from the new connection instead. A player who runs out of time for their
+         * turn or breaks the input limits is disconnected without waiting for them, see InputLimits.
+         *
+         * @return the line, or null if the player left and didn't come back in time
+         */
+        private String readMove(int seat) {
+            while (true) {
+                takeReturningPlayers(seat);
+                PlayerConnection player = client(seat);
+                try {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(turnDeadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        throw new SocketTimeoutException();
                     }
+                    player.getSocket().setSoTimeout((int) Math.min(remainingMillis, Integer.MAX_VALUE));
+                    String line = player.readLine();
+                    if (line != null) {
+                        return line;
+                    }
+                } catch (SocketTimeoutException e) {
+                    metrics.turnTimedOut();
+                    player.getOutput().println("You took too long to move. To play again, please type 'nc localhost 1024'!");
+                    player.close();
+                    return null;
+                } catch (InputRejectedException e) {
+                    player.getOutput().println(e.getMessage() + ". To play again, please type 'nc localhost 1024'!");
+                    player.close();
+                    return null;
+                } catch (IOException e) {
+                    // the connection dropped, the same as reaching the end of it
+                }
+                if (!waitForReturn(seat)) {
+                    return null;
                 }
-            } catch (Exception e) {
-                // No need to print out the exceptions
             }
         }
 
         /**
-         * This method checks each row horizontally for a match of 4 of the same letters. My logic behind
-         * checking for a horizontal match is to get the most recent letter placed into the board, then check the other
-         * columns in that row by incrementing the column array index by 1 more each time
+         * Starts the clock on a player's turn, unless it's already running.
          *
-         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y'
+         * @return true if the turn has just started
          */
-        public void checkHorizontal(char playerOneOrPlayerTwo) {
-            try {
-                for (int row = 0; row < board.length; row++) {
-                    for (int column = 0; column < board[row].length; column++) {
-                        if (board[row][column] == playerOneOrPlayerTwo &&
-                                board[row][column + 1] == playerOneOrPlayerTwo &&
-                                board[row][column + 2] == playerOneOrPlayerTwo &&
-                                board[row][column + 3] == playerOneOrPlayerTwo) {
-                            isWinnerDecided = true;
-                            if (playerOneOrPlayerTwo == 'R') {
-                                isPlayerOneWinner = true;
-                            } else if (playerOneOrPlayerTwo == 'Y') {
-                                isPlayerTwoWinner = true;
-                            }
-                        }
-                    }
+        private boolean startTurn(int seat) {
+            if (turnDeadline != 0) {
+                return false;
+            }
+            turnDeadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(client(seat).getLimits().getTurnTimeoutMillis());
+            return true;
+        }
+
+        /**
+         * @return true if the player came back within the grace window and is attached again
+         */
+        private boolean waitForReturn(int seat) {
+            client(seat).close();
+            SessionRegistry.Session session = sessions[seat];
+            if (session == null) {
+                return false;
+            }
+            PlayerConnection returned = session.poll();
+            if (returned == null) {
+                output(1 - seat).println("Player " + (seat + 1) + " was disconnected, waiting up to "
+                        + reconnectGraceMillis / 1000 + " seconds for them to come back..");
+                try {
+                    returned = session.await(reconnectGraceMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (returned == null) {
+                    return false;
                 }
-            } catch (Exception e) {
-                // no need to print out exception error if any occurs.
             }
+            attach(seat, returned, seat);
+            output(1 - seat).println("Player " + (seat + 1) + " is back!");
+            return true;
         }
 
         /**
-         * This method checks each column and row diagonally  for a match of 4 of the same
-         * letters. My logic behind checking for a diagonal match is to get the most recent letter placed into the board,
-         * then from that letter check the first letter diagonal to it (incrementing row by 1 and decrease column by 1).
-         * Then, I check if there is another diagonal letter by incrementing the row by 2 and decreasing column by 2,
-         * and finally I increment the row by 3 and decrement the column by 3 because the fourth diagonal letter
-         * should be 3 away from the first one.
+         * Switches over to the new connection of any player who has come back, without waiting.
          *
-         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y' diagonally
+         * @param turn - the seat whose turn it is
          */
-        public void checkDiagonal(char playerOneOrPlayerTwo) {
-            try {
-                for (int row = 0; row < board.length; row++) {
-                    for (int column = 0; column < board[row].length; column++) {
-                        if (board[row][column] == playerOneOrPlayerTwo
-                                && board[row + 1][column - 1] == playerOneOrPlayerTwo
-                                && board[row + 2][column - 2] == playerOneOrPlayerTwo
-                                && board[row + 3][column - 3] == playerOneOrPlayerTwo
-                        ) {
-                            System.out.println("diagonal found " + playerOneOrPlayerTwo);
-                            isWinnerDecided = true;
-                            if (playerOneOrPlayerTwo == 'R') {
-                                isPlayerOneWinner = true;
-                            } else if (playerOneOrPlayerTwo == 'Y') {
-                                isPlayerTwoWinner = true;
-                            }
-                        }
-                        if (board[row][column] == playerOneOrPlayerTwo
-                                && board[row + 1][column + 1] == playerOneOrPlayerTwo
-                                && board[row + 2][column + 2] == playerOneOrPlayerTwo
-                                && board[row + 3][column + 3] == playerOneOrPlayerTwo) {
-                            isWinnerDecided = true;
-                            if (playerOneOrPlayerTwo == 'R') {
-                                isPlayerOneWinner = true;
-                            } else if (playerOneOrPlayerTwo == 'Y') {
-                                isPlayerTwoWinner = true;
-                            }
-                        }
-
+        private void takeReturningPlayers(int turn) {
+            for (int seat = 0; seat < 2; seat++) {
+                if (sessions[seat] != null) {
+                    PlayerConnection returned = sessions[seat].poll();
+                    if (returned != null) {
+                        attach(seat, returned, turn);
                     }
                 }
-            } catch (Exception e) {
-                // don't print out exception if it occurs
             }
         }
 
         /**
-         * This method checks for a negative diagonal, meaning it checks from top left to bottom right
+         * Catches a returning player up: the board as it is now and whose turn it is. If it's their turn, it starts
+         * again from the beginning, the clock kept running while the match waited for them to come back.
+         */
+        private void attach(int seat, PlayerConnection returned, int turn) {
+            PlayerConnection old = client(seat);
+            if (seat == 0) {
+                client1 = returned;
+            } else {
+                client2 = returned;
+            }
+            sessions[seat].setCurrent(returned);
+            old.close();
+            metrics.playerReconnected();
+            returned.getOutput().println("\n[Player " + (seat + 1) + "] Welcome back to match " + matchId + "!");
+            showBoard(board, returned);
+            if (seat == turn) {
+                turnDeadline = 0;
+                startTurn(seat);
+                returned.getOutput().println(seat == 0 ? "[R] Your turn!" : "[Y] Your turn! ");
+            } else {
+                returned.getOutput().println("Currently waiting for Player " + (turn + 1) + " to make a move..");
+            }
+        }
+
+        /**
+         * The player didn't come back, so the match is over.
+         */
+        private void leave(int seat) {
+            abandoned = true;
+            metrics.matchAbandoned();
+            output(1 - seat).println("Player " + (seat + 1) + " left the match. "
+                    + "To play again, please type 'nc localhost 1024'!");
+        }
+
+        private void broadcast(String message) {
+            if (spectators != null) {
+                spectators.publish(board, message);
+            }
+        }
+
+        /**
+         * This method is responsible for sending the board to a player each time the user inputs a number. The
+         * whole board is drawn into the player's own buffer and sent in one write, instead of one print per cell.
          *
-         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y' diagonally
+         * @param board  - bitboard that contains the current state of connect 4 board
+         * @param player - the player to send the board to
          */
-        private void checkNegativeDiagonal(char playerOneOrPlayerTwo) {
-            try {
-                // only loop row and column until row and column equals 3 because there is only 3 possibilities of a
-                // negative slope/diagonal forming in a 6 by 7 grid.
-                for (int row = 0; row <= 3; row++) {
-                    for (int column = 0; column <= 3; column++) {
-                        if (board[row][column] == playerOneOrPlayerTwo
-                                && board[row + 1][column + 1] == playerOneOrPlayerTwo
-                                && board[row + 2][column + 2] == playerOneOrPlayerTwo
-                                && board[row + 3][column + 3] == playerOneOrPlayerTwo) {
-                            isWinnerDecided = true;
-                            if (playerOneOrPlayerTwo == 'R') {
-                                isPlayerOneWinner = true;
-                            } else if (playerOneOrPlayerTwo == 'Y') {
-                                isPlayerTwoWinner = true;
-                            }
-                        }
-                    }
+        public void showBoard(BitBoard board, PlayerConnection player) {
+            if (player == null) {
+                return; // the computer doesn't need to see the board
+            }
+            byte[] frame = player.sendBoard(board);
+            // every board sent to a player used to be printed on the server console too, now it's debug logging
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("Board sent to a player:\n" + new String(frame, StandardCharsets.US_ASCII));
+            }
+        }
+
+        /**
+         * This method is responsible for placing player 1 or player 2's input into the board and printing
+         * out the result right as they've chosen what column to insert into. The bitboard keeps track of how high
+         * each column is, so the disc goes straight to the right row instead of checking each row bottom to top.
+         *
+         * @param board          - the bitboard we want to place a letter into
+         * @param insertInColumn - keeps track of the column number the user wants to insert into
+         * @param letter         - stores either player 1 'R' or player 2 'Y' as a char
+         * @param player         - the player who made the move, the updated board is sent back to them
+         */
+        public void placePiece(BitBoard board, int insertInColumn, char letter, PlayerConnection player) {
+            int seat = letter == p.getPlayerOne() ? 0 : 1;
+            int row = board.play(insertInColumn, seat);
+            // a full column still passes the turn, so it's journalled like any other move
+            journal.movePlayed(matchId, insertInColumn, seat);
+            if (row != -1) {
+                showBoard(board, player);
+                broadcast((computer != null && seat == 1 ? "The computer" : "Player " + (seat + 1))
+                        + " played column " + (insertInColumn + 1));
+            } else {
+                Log.debug("Column full! Try placing in a different column!");
+                player.getOutput().println("Column full! Try placing in a different column!");
+            }
+        }
+
+        /**
+         * This method checks if the given player has connected 4 (or however many this board needs) vertically,
+         * horizontally or on either diagonal.
+         * It replaces scanning the whole board for each direction, the bitboard finds all 4 directions with a few
+         * shifts and masks.
+         *
+         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y'
+         */
+        public void checkWinner(char playerOneOrPlayerTwo) {
+            int player = playerOneOrPlayerTwo == p.getPlayerOne() ? 0 : 1;
+            int result = GameRecord.outcome(board);
+            if (result == (player == 0 ? GameRecord.PLAYER_ONE_WON : GameRecord.PLAYER_TWO_WON)) {
+                isWinnerDecided = true;
+                if (player == 0) {
+                    isPlayerOneWinner = true;
+                } else {
+                    isPlayerTwoWinner = true;
                 }
-            } catch (Exception e) {
             }
         }
 
         /**
-         * This method checks if no winner occurs by checking the top row (row 1) if all the placeholder 'O's are gone
-         * and if no winner has been decided. If all the placeholder 'O' and a winner hasn't been decided, that means
-         * the board is full and neither player 1 or player 2 have won
+         * This method checks if no winner occurs by checking if the top row is full and if no winner has been
+         * decided. If the top row is full and a winner hasn't been decided, that means the board is full and neither
+         * player 1 or player 2 have won
          *
          * @param terminalOutputOne - prints output to player 1 terminal
          * @param terminalOutputTwo - prints output to player 2 terminal
          */
         public void checkIfNoWinner(PrintWriter terminalOutputOne, PrintWriter terminalOutputTwo) {
 
-            if (board[0][0] != boardPlaceHolder && board[0][1] != boardPlaceHolder
-                    && board[0][2] != boardPlaceHolder && board[0][3] != boardPlaceHolder &&
-                    board[0][4] != boardPlaceHolder && board[0][5] != boardPlaceHolder &&
-                    board[0][6] != boardPlaceHolder && !isWinnerDecided) {
+            if (!isWinnerDecided && GameRecord.outcome(board) == GameRecord.DRAW) {
+                isDraw = true;
                 terminalOutputOne.println("NO WINNER! please type 'nc localhost 1024' to play again!");
                 terminalOutputTwo.println("NO WINNER! please type 'nc localhost 1024' to play again!");
 //                System.exit(1);
@@ -304,109 +416,168 @@ public class ConnectFour {
          */
         @Override
         public void run() {
+            long matchStartedAt = System.nanoTime();
+            metrics.matchStarted();
+            try {
+                play();
+            } finally {
+                if (sessionRegistry != null) {
+                    sessionRegistry.close(sessions[0]);
+                    sessionRegistry.close(sessions[1]);
+                }
+                metrics.matchFinished(matchStartedAt);
+                if (!resultJournalled) {
+                    journal.matchEnded(matchId, GameRecord.ABANDONED);
+                }
+                if (spectators != null) {
+                    // does nothing if the result has already been sent
+                    spectators.finish(board, "The match has ended");
+                }
+            }
+        }
 
-            try (
-                    PrintWriter playerOneOutput = new PrintWriter(client1.getOutputStream(), true);
-                    PrintWriter playerTwoOutput = new PrintWriter(client2.getOutputStream(), true);
-                    BufferedReader playerOneInput = new BufferedReader(new InputStreamReader(client1.getInputStream()));
-                    BufferedReader playerTwoInput = new BufferedReader(new InputStreamReader(client2.getInputStream()));
-            ) {
-                playerOneOutput.println("\n[Player 1] Welcome to connect4");
-                playerTwoOutput.println("\n[Player 2] Welcome to connect4");
-
-                playerOneOutput.println("Type R when you're ready to play, game will start when both players are ready\n");
-                playerTwoOutput.println("Type R when you're ready to play, game will start when both players are ready\n");
-
-                // First player to join the network gets first move.
-                try {
-                    // read if the player is typing 'R' for ready
-                    playerOneReadyStatus = playerOneInput.readLine();
-                    playerTwoReadyStatus = playerTwoInput.readLine();
-
-                    // keep checking if they type 'r' or 'R' or else keep prompting them to type it.
-                    do {
-                        // if they type 'R' or 'r', it should be fine either way as it ignores the capitalization
-                        if (!playerOneReadyStatus.equalsIgnoreCase("R")) {
-                            playerOneOutput.println("Type R when you're ready to play, " +
-                                    "game will start when both players are ready");
-                            playerOneReadyStatus = playerOneInput.readLine();
-                        }
-                        if (!playerTwoReadyStatus.equalsIgnoreCase("R")) {
-                            playerTwoOutput.println("Type R when you're ready to play, " +
-                                    "game will start when both players are ready");
-                            playerTwoReadyStatus = playerTwoInput.readLine();
-                        }
-                    } while (!playerOneReadyStatus.equalsIgnoreCase("R")
-                            || !playerTwoReadyStatus.equalsIgnoreCase("R"));
-                } catch (Exception e) {
+        private void play() {
+            try {
+                // the player who has been waiting the longest is player 1 and gets first move.
+                board.reset(); // every cell starts as the placeholder 'O'
+                if (resumeFrom != null) {
+                    resumeFrom.replayOnto(board);
+                    playerOneTurn = resumeFrom.nextSeat() == 0;
+                    output(0).println("\n[Player 1] Welcome back! Carrying on match " + matchId + " where it was left");
+                    output(1).println("\n[Player 2] Welcome back! Carrying on match " + matchId + " where it was left");
+                } else if (computer != null) {
+                    output(0).println("\n[Player 1] You're playing the computer! Welcome to connect4");
+                } else {
+                    output(0).println("\n[Player 1] Opponent found! Welcome to connect4");
+                    output(1).println("\n[Player 2] Opponent found! Welcome to connect4");
+                }
+                BoardGeometry geometry = board.getGeometry();
+                if (!geometry.isStandard()) {
+                    String variant = "Connect " + geometry.getWinLength() + " on a board " + geometry.getRows()
+                            + " rows high and " + geometry.getColumns() + " columns wide";
+                    output(0).println(variant);
+                    output(1).println(variant);
+                }
+                for (int seat = 0; seat < 2; seat++) {
+                    if (sessions[seat] != null) {
+                        sessions[seat].setCurrent(client(seat));
+                        String token = SessionRegistry.format(sessions[seat].getToken());
+                        String address = sessionRegistry.getAddress();
+                        output(seat).println("If you're disconnected, connect again"
+                                + (address == null ? "" : " to " + address) + " and type T " + token
+                                + " within " + reconnectGraceMillis / 1000 + " seconds to carry on");
+                    }
                 }
 
-                fillBoard(board); // fill board with placeholder 'O'
-                showBoard(board, playerOneOutput); // display placeholder board to player 1
-                showBoard(board, playerTwoOutput); // display placeholder board to player 2
+                showBoard(board, client1); // display placeholder board to player 1
+                showBoard(board, client2); // display placeholder board to player 2
+                broadcast(computer != null ? "Player 1 (R) is playing the computer (Y)"
+                        : "Player 1 (R) is playing Player 2 (Y)");
 
 
                 // I keep track of which player gets to go by two boolean variables, one for each player.
                 // once player one goes, it is the next players turn by alternating boolean values until a winner is
                 // decided
-                while (!isWinnerDecided) {
+                while (!isWinnerDecided && !isDraw) {
                     if (playerOneTurn) {
                         try {
-                            playerOneOutput.println("[R] Your turn!");
-                            playerTwoOutput.println("Currently waiting for Player 1 to make a move..");
+                            // an invalid move asks the same player again, but the turn and its time limit go on
+                            if (startTurn(0)) {
+                                output(1).println("Currently waiting for Player 1 to make a move..");
+                            }
+                            output(0).println("[R] Your turn!");
+                            // a dropped connection used to be read as a null line over and over, now the match
+                            // waits for the player to come back or ends
+                            String line = readMove(0);
+                            if (line == null) {
+                                leave(0);
+                                break;
+                            }
                             // take user input and parse entire String to only return integer value
-                            terminalColInput = Integer.parseInt(playerOneInput.readLine());
+                            terminalColInput = Integer.parseInt(line);
+                            long moveStartedAt = System.nanoTime();
                             // subtract the user input by 1 because of first element of array is index 0, so input 1 = 0
                             terminalInputIndexed = terminalColInput - 1;
-                            placePiece(board, terminalInputIndexed, p.getPlayerOne(), playerOneOutput);
-                            showBoard(board, playerTwoOutput);
-                            playerOneOutput.println("Opponents turn..\n");
+                            placePiece(board, terminalInputIndexed, p.getPlayerOne(), client1);
+                            client1.inputAccepted();
+                            showBoard(board, client2);
+                            output(0).println("Opponents turn..\n");
+                            metrics.movePlayed(moveStartedAt);
+                            turnDeadline = 0;
                             playerOneTurn = false;
                             playerTwoTurn = true;
                         } catch (Exception e) {
-                            System.out.println("Enter a number between 1 to 7!");
-                            playerOneOutput.println("Enter a number between 1 to 7!");
+                            metrics.invalidInput();
+                            Log.debug("Enter a number between 1 to " + board.getColumns() + "!");
+                            output(0).println("Enter a number between 1 to " + board.getColumns() + "!");
                         }
+                    } else if (playerTwoTurn && computer != null) {
+                        terminalInputIndexed = computer.bestMove(board, 1);
+                        placePiece(board, terminalInputIndexed, p.getPlayerTwo(), client2);
+                        output(0).println("The computer played column " + (terminalInputIndexed + 1));
+                        showBoard(board, client1);
+                        playerOneTurn = true;
+                        playerTwoTurn = false;
                     } else if (playerTwoTurn) {
                         try {
-                            playerTwoOutput.println("[Y] Your turn! ");
-                            terminalColInput = Integer.parseInt(playerTwoInput.readLine());
+                            startTurn(1);
+                            output(1).println("[Y] Your turn! ");
+                            String line = readMove(1);
+                            if (line == null) {
+                                leave(1);
+                                break;
+                            }
+                            terminalColInput = Integer.parseInt(line);
+                            long moveStartedAt = System.nanoTime();
                             // subtract the user input by 1 because of first element of array is index 0, so input 1 = 0
                             terminalInputIndexed = terminalColInput - 1;
-                            placePiece(board, terminalInputIndexed, p.getPlayerTwo(), playerTwoOutput);
-                            showBoard(board, playerOneOutput);
-                            playerTwoOutput.println("Opponents turn..\n");
+                            placePiece(board, terminalInputIndexed, p.getPlayerTwo(), client2);
+                            client2.inputAccepted();
+                            showBoard(board, client1);
+                            output(1).println("Opponents turn..\n");
+                            metrics.movePlayed(moveStartedAt);
+                            turnDeadline = 0;
                             playerOneTurn = true;
                             playerTwoTurn = false;
                         } catch (Exception e) {
-                            System.out.println("Enter a number between 1 to 7!");
-                            playerTwoOutput.println("Enter a number between 1 to 7!");
+                            metrics.invalidInput();
+                            Log.debug("Enter a number between 1 to " + board.getColumns() + "!");
+                            output(1).println("Enter a number between 1 to " + board.getColumns() + "!");
                         }
                     }
 
                     // each iteration check if a vertical, horizontal, diagonal pattern has been found for both player 1
                     // and player 2.
 
-                    // check for player one
-                    checkNegativeDiagonal(p.getPlayerOne());
-                    checkVertical(p.getPlayerOne());
-                    checkHorizontal(p.getPlayerOne());
-                    checkDiagonal(p.getPlayerOne());
-
-                    // check for player two
-                    checkNegativeDiagonal(p.getPlayerTwo());
-                    checkVertical(p.getPlayerTwo());
-                    checkHorizontal(p.getPlayerTwo());
-                    checkDiagonal(p.getPlayerTwo());
+                    long winCheckStartedAt = System.nanoTime();
+                    checkWinner(p.getPlayerOne());
+                    checkWinner(p.getPlayerTwo());
+                    metrics.winChecked(winCheckStartedAt);
 
                     // check if no winner exists and all the slots in the board are occupied
-                    checkIfNoWinner(playerOneOutput, playerTwoOutput);
+                    checkIfNoWinner(output(0), output(1));
+                }
+                if (abandoned) {
+                    if (spectators != null) {
+                        spectators.finish(board, "A player left the match");
+                    }
+                    return; // the journal records it as abandoned when the match ends
                 }
                 // if a winner is found, it will print out the result in both player 1 and 2's terminal
-                mentionWinner(playerOneOutput, playerTwoOutput);
-
-            } catch (IOException e) {
-                e.printStackTrace();
+                mentionWinner(output(0), output(1));
+                journal.matchEnded(matchId, isPlayerOneWinner ? GameRecord.PLAYER_ONE_WON
+                        : isPlayerTwoWinner ? GameRecord.PLAYER_TWO_WON : GameRecord.DRAW);
+                resultJournalled = true;
+                if (spectators != null) {
+                    spectators.finish(board, isPlayerOneWinner ? "Player 1 won!"
+                            : isPlayerTwoWinner ? (computer != null ? "The computer won!" : "Player 2 won!")
+                            : "NO WINNER!");
+                }
+            } finally {
+                client1.close();
+                if (client2 != null) {
+                    client2.close();
+                }
             }
         }
     }
@@ -0,0 +1,41 @@
+package com.company;
+
+/**
+ * How hard the computer opponent plays. Each level caps how deep the Solver may search and how long it's allowed to
+ * think per move by default, the thinking time can be changed per level when the server starts.
+ */
+public enum Difficulty {
+
+    EASY(2, 100),
+    MEDIUM(8, 500),
+    HARD(BitBoard.ROWS * BitBoard.COLUMNS, 2000);
+
+    private final int maxDepth;
+    private final long defaultThinkMillis;
+
+    Difficulty(int maxDepth, long defaultThinkMillis) {
+        this.maxDepth = maxDepth;
+        this.defaultThinkMillis = defaultThinkMillis;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getDefaultThinkMillis() {
+        return defaultThinkMillis;
+    }
+
+    /**
+     * @param letter - E, M or H, in either case
+     * @return the matching difficulty, or null if the letter isn't one of them
+     */
+    public static Difficulty fromLetter(String letter) {
+        for (Difficulty difficulty : values()) {
+            if (letter.equalsIgnoreCase(difficulty.name().substring(0, 1))) {
+                return difficulty;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,451 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out statistics over any number of finished games, offline: win rates by opening, how long games last, how
+ * long players take per move, and players who move so fast every time that they're probably bots.
+ *
+ * Usage: GameAnalyzer [options] <archive dir | games-N.dat | moves.txt> ...
+ * --opening-moves=2  how many moves make up an opening, at most 8
+ * --top=20           how many of the most played openings to list
+ * --fast-ms=150      a player who takes less than this on nearly every move is flagged as too fast for a person
+ * --threads=N        threads replaying games, defaults to the number of cores
+ *
+ * Archive files are the journal's (see GameArchive). A text file has one game per line, the columns played from 1
+ * as digits ("4453") or separated by spaces, optionally after the board size and a colon ("8x9x5: 5 5 12").
+ *
+ * Files are read one game at a time and never loaded whole. The reading thread hands games out in batches to a
+ * fork/join pool, which replays them with the same rules the servers play by (BitBoard and GameRecord.outcome()),
+ * so a game always ends on the same move it did live. Each batch is counted up on its own, times included (see
+ * LatencyHistogram.Local), and merged into the total when it's done. Only a few batches per thread are ever
+ * waiting, so memory stays flat however many games there are.
+ */
+public class GameAnalyzer {
+
+    private static final int BATCH_SIZE = 4096;
+    // a player needs this many moves in a game before their speed means anything
+    private static final int MIN_MOVES_TO_FLAG = 8;
+    // longest game the length distribution counts separately, anything longer goes in the last bucket
+    private static final int MAX_LENGTH = BoardGeometry.MAX_SIZE * BoardGeometry.MAX_SIZE;
+
+    private final int openingMoves;
+    private final long fastMillis;
+    private final ForkJoinPool pool;
+    private final Semaphore batchesWaiting;
+    private final int maxBatchesWaiting;
+
+    private final Tally total = new Tally();
+    private final LatencyHistogram playerMoveTime = new LatencyHistogram();
+    private final LatencyHistogram computerMoveTime = new LatencyHistogram();
+    private final LatencyHistogram gameDuration = new LatencyHistogram();
+
+    /**
+     * @param openingMoves - moves that make up an opening, 1 to 8
+     * @param fastMillis   - think time under which a move is too fast for a person
+     * @param threads      - threads replaying games
+     */
+    public GameAnalyzer(int openingMoves, long fastMillis, int threads) {
+        if (openingMoves < 1 || openingMoves > 8) {
+            throw new IllegalArgumentException("Openings are 1 to 8 moves");
+        }
+        this.openingMoves = openingMoves;
+        this.fastMillis = fastMillis;
+        this.pool = new ForkJoinPool(threads);
+        this.maxBatchesWaiting = threads * 2;
+        this.batchesWaiting = new Semaphore(maxBatchesWaiting);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<Path> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: GameAnalyzer [--opening-moves=2] [--top=20] [--fast-ms=150] [--threads=N] "
+                    + "<archive dir | games-N.dat | moves.txt> ...");
+            System.exit(2);
+        }
+        GameAnalyzer analyzer = new GameAnalyzer(Integer.parseInt(options.getOrDefault("opening-moves", "2")),
+                Long.parseLong(options.getOrDefault("fast-ms", "150")),
+                Integer.parseInt(options.getOrDefault("threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        long startedAt = System.nanoTime();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                for (Path file : GameArchive.files(input)) {
+                    analyzer.addArchive(file);
+                }
+            } else if (input.getFileName().toString().endsWith(".dat")) {
+                analyzer.addArchive(input);
+            } else {
+                analyzer.addMoveFile(input);
+            }
+        }
+        analyzer.finish();
+        analyzer.print(Integer.parseInt(options.getOrDefault("top", "20")), System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Reads every game in an archive file.
+     */
+    public void addArchive(Path file) throws IOException {
+        List<GameRecord> batch = new ArrayList<>(BATCH_SIZE);
+        GameArchive.scan(file, game -> {
+            batch.add(game);
+            if (batch.size() == BATCH_SIZE) {
+                submit(new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        submit(batch);
+    }
+
+    /**
+     * Reads every game in a text file of moves, one game per line. A line that isn't a game is counted as corrupt.
+     */
+    public void addMoveFile(Path file) throws IOException {
+        List<GameRecord> batch = new ArrayList<>(BATCH_SIZE);
+        try (BufferedReader lines = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                GameRecord game = parseMoves(lineNumber, line);
+                if (game == null) {
+                    synchronized (total) {
+                        total.corrupt++;
+                    }
+                    continue;
+                }
+                batch.add(game);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        submit(batch);
+    }
+
+    /**
+     * @return the game, with no times and no result since a line doesn't have them, or null if it isn't a game
+     */
+    private static GameRecord parseMoves(long lineNumber, String line) {
+        BoardGeometry geometry = BoardGeometry.STANDARD;
+        String moves = line;
+        int colon = line.indexOf(':');
+        try {
+            if (colon != -1) {
+                geometry = BoardGeometry.parse(line.substring(0, colon));
+                moves = line.substring(colon + 1);
+            }
+            GameRecord game = new GameRecord(lineNumber, 0, GameRecord.HUMAN, geometry);
+            moves = moves.trim();
+            // the original rules pass the turn on a full column, so the seats always take turns
+            if (moves.indexOf(' ') == -1) {
+                for (int i = 0; i < moves.length(); i++) {
+                    game.addMove(column(moves.charAt(i) - '0', geometry), game.getMoveCount() % 2, 0);
+                }
+            } else {
+                for (String move : moves.split("\\s+")) {
+                    game.addMove(column(Integer.parseInt(move), geometry), game.getMoveCount() % 2, 0);
+                }
+            }
+            return game;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int column(int number, BoardGeometry geometry) {
+        if (number < 1 || number > geometry.getColumns()) {
+            throw new IllegalArgumentException("Column " + number + " isn't on a " + geometry + " board");
+        }
+        return number - 1;
+    }
+
+    /**
+     * Hands a batch to the pool, waiting first if the pool is already a few batches behind the reader.
+     */
+    private void submit(List<GameRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchesWaiting.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                Tally tally = new Tally();
+                Map<BoardGeometry, BitBoard> boards = new HashMap<>();
+                for (GameRecord game : batch) {
+                    analyze(game, boards.computeIfAbsent(game.getGeometry(), BitBoard::new), tally);
+                }
+                tally.playerMoveTime.addTo(playerMoveTime);
+                tally.computerMoveTime.addTo(computerMoveTime);
+                tally.gameDuration.addTo(gameDuration);
+                synchronized (total) {
+                    total.merge(tally);
+                }
+            } finally {
+                batchesWaiting.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for every batch handed out so far.
+     */
+    public void finish() throws InterruptedException {
+        batchesWaiting.acquire(maxBatchesWaiting);
+        batchesWaiting.release(maxBatchesWaiting);
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Replays one game and counts it up. A game whose moves carry on after the rules say it was over, or whose
+     * recorded result isn't what the replay gives, is counted as a mismatch and left out of everything else.
+     */
+    private void analyze(GameRecord game, BitBoard board, Tally tally) {
+        board.reset();
+        int moveCount = game.getMoveCount();
+        int result = GameRecord.IN_PROGRESS;
+        try {
+            for (int move = 0; move < moveCount; move++) {
+                if (result != GameRecord.IN_PROGRESS) {
+                    tally.mismatches++;
+                    return;
+                }
+                board.play(game.getColumn(move), game.getSeat(move));
+                result = GameRecord.outcome(board);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            tally.corrupt++;
+            return;
+        }
+        boolean timed = game.getStartMillis() != 0;
+        if (result == GameRecord.IN_PROGRESS) {
+            // nobody won and the board isn't full, so someone left
+            result = GameRecord.ABANDONED;
+        }
+        if (timed && game.getResult() != result) {
+            tally.mismatches++;
+            return;
+        }
+
+        tally.games++;
+        tally.moves += moveCount;
+        tally.results[result]++;
+        tally.lengths[Math.min(moveCount, MAX_LENGTH)]++;
+        if (result != GameRecord.ABANDONED && moveCount >= openingMoves) {
+            long[] opening = tally.openings.computeIfAbsent(openingKey(game), key -> new long[3]);
+            opening[result]++;
+        }
+        if (timed) {
+            countTimes(game, tally);
+        }
+    }
+
+    /**
+     * The board size, then each opening move's column + 1 in 5 bits, so every opening on every board has its own key.
+     */
+    private long openingKey(GameRecord game) {
+        BoardGeometry geometry = game.getGeometry();
+        long key = geometry.getRows() << 10 | geometry.getColumns() << 5 | geometry.getWinLength();
+        for (int move = 0; move < openingMoves; move++) {
+            key = key << 5 | (game.getColumn(move) + 1);
+        }
+        return key;
+    }
+
+    /**
+     * Records how long each move took, from the move before it (or the start for the first move), and flags
+     * a player who was too fast on nearly every move.
+     */
+    private void countTimes(GameRecord game, Tally tally) {
+        boolean computer = game.getOpponent() != GameRecord.HUMAN;
+        int[] fastMoves = new int[2];
+        int[] movesMade = new int[2];
+        int previous = 0;
+        for (int move = 0; move < game.getMoveCount(); move++) {
+            int seat = game.getSeat(move);
+            long thinkMillis = game.getMoveMillis(move) - previous;
+            previous = game.getMoveMillis(move);
+            if (computer && seat == 1) {
+                tally.computerMoveTime.record(TimeUnit.MILLISECONDS.toNanos(thinkMillis));
+                continue;
+            }
+            tally.playerMoveTime.record(TimeUnit.MILLISECONDS.toNanos(thinkMillis));
+            movesMade[seat]++;
+            if (thinkMillis < fastMillis) {
+                fastMoves[seat]++;
+            }
+        }
+        tally.gameDuration.record(TimeUnit.MILLISECONDS.toNanos(game.getEndMillis()));
+        for (int seat = 0; seat < 2; seat++) {
+            // 9 out of 10, so one quick obvious block doesn't count against a person
+            if (movesMade[seat] >= MIN_MOVES_TO_FLAG && fastMoves[seat] * 10 >= movesMade[seat] * 9) {
+                tally.tooFast++;
+                if (tally.tooFastExamples.size() < 20) {
+                    tally.tooFastExamples.add("match " + game.getMatchId() + " player " + (seat + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param top          - how many openings to list
+     * @param elapsedNanos - how long the analysis took
+     */
+    public void print(int top, long elapsedNanos) {
+        Tally tally = total;
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Games:              %,d in %.1fs (%,.0f games/minute)%n", tally.games, seconds,
+                tally.games / seconds * 60);
+        System.out.printf("Skipped:            %,d corrupt, %,d that don't replay to their recorded result%n",
+                tally.corrupt, tally.mismatches);
+        if (tally.games == 0) {
+            return;
+        }
+        System.out.printf("Results:            %s player 1, %s player 2, %s drawn, %s abandoned%n",
+                percent(tally.results[GameRecord.PLAYER_ONE_WON], tally.games),
+                percent(tally.results[GameRecord.PLAYER_TWO_WON], tally.games),
+                percent(tally.results[GameRecord.DRAW], tally.games),
+                percent(tally.results[GameRecord.ABANDONED], tally.games));
+        System.out.printf("Game length:        average %.1f moves, p50=%d p90=%d p99=%d%n",
+                (double) tally.moves / tally.games, tally.lengthPercentile(50), tally.lengthPercentile(90),
+                tally.lengthPercentile(99));
+        printTimes("Player move time:", playerMoveTime);
+        printTimes("Computer move time:", computerMoveTime);
+        printTimes("Game duration:", gameDuration);
+        System.out.printf("Too fast:           %,d players took under %dms on 9 out of 10 moves%n",
+                tally.tooFast, fastMillis);
+        for (String example : tally.tooFastExamples) {
+            System.out.println("                    " + example);
+        }
+
+        List<Map.Entry<Long, long[]>> openings = new ArrayList<>(tally.openings.entrySet());
+        openings.sort((a, b) -> Long.compare(played(b.getValue()), played(a.getValue())));
+        System.out.printf("%nMost played openings (%d moves, finished games only):%n", openingMoves);
+        System.out.printf("%-24s %12s %9s %9s %9s%n", "Opening", "Games", "P1 won", "P2 won", "Drawn");
+        for (Map.Entry<Long, long[]> opening : openings.subList(0, Math.min(top, openings.size()))) {
+            long[] counts = opening.getValue();
+            long played = played(counts);
+            System.out.printf("%-24s %,12d %9s %9s %9s%n", describe(opening.getKey()), played,
+                    percent(counts[GameRecord.PLAYER_ONE_WON], played), percent(counts[GameRecord.PLAYER_TWO_WON],
+                            played), percent(counts[GameRecord.DRAW], played));
+        }
+    }
+
+    private static long played(long[] counts) {
+        return counts[0] + counts[1] + counts[2];
+    }
+
+    /**
+     * @return the opening's columns from 1, after the board size if it isn't the standard board
+     */
+    private String describe(long key) {
+        String columns = "";
+        for (int move = 0; move < openingMoves; move++) {
+            columns = (key & 31) + (columns.isEmpty() ? "" : " " + columns);
+            key >>>= 5;
+        }
+        BoardGeometry geometry = new BoardGeometry((int) (key >>> 10 & 31), (int) (key >>> 5 & 31), (int) (key & 31));
+        return geometry.isStandard() ? columns : geometry + ": " + columns;
+    }
+
+    private static void printTimes(String label, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        System.out.printf("%-19s p50=%dms p90=%dms p99=%dms max=%dms (%,d samples)%n", label,
+                TimeUnit.NANOSECONDS.toMillis(histogram.percentile(50)),
+                TimeUnit.NANOSECONDS.toMillis(histogram.percentile(90)),
+                TimeUnit.NANOSECONDS.toMillis(histogram.percentile(99)),
+                TimeUnit.NANOSECONDS.toMillis(histogram.getMax()), histogram.getCount());
+    }
+
+    private static String percent(long count, long of) {
+        return String.format("%.1f%%", of == 0 ? 0 : 100.0 * count / of);
+    }
+
+    /**
+     * Counts for one batch of games, or for every game once the batches are merged. The times are added to the
+     * analyzer's histograms at the end of each batch instead.
+     */
+    private static class Tally {
+
+        long games;
+        long moves;
+        long corrupt;
+        long mismatches;
+        final long[] results = new long[4];
+        final long[] lengths = new long[MAX_LENGTH + 1];
+        // opening key to games won by player 1, won by player 2 and drawn
+        final Map<Long, long[]> openings = new HashMap<>();
+        long tooFast;
+        final List<String> tooFastExamples = new ArrayList<>();
+        final LatencyHistogram.Local playerMoveTime = new LatencyHistogram.Local();
+        final LatencyHistogram.Local computerMoveTime = new LatencyHistogram.Local();
+        final LatencyHistogram.Local gameDuration = new LatencyHistogram.Local();
+
+        void merge(Tally other) {
+            games += other.games;
+            moves += other.moves;
+            corrupt += other.corrupt;
+            mismatches += other.mismatches;
+            for (int i = 0; i < results.length; i++) {
+                results[i] += other.results[i];
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] += other.lengths[i];
+            }
+            other.openings.forEach((key, counts) -> {
+                long[] merged = openings.computeIfAbsent(key, k -> new long[3]);
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i] += counts[i];
+                }
+            });
+            tooFast += other.tooFast;
+            for (String example : other.tooFastExamples) {
+                if (tooFastExamples.size() < 20) {
+                    tooFastExamples.add(example);
+                }
+            }
+        }
+
+        int lengthPercentile(double percentile) {
+            long target = (long) Math.ceil(games * percentile / 100);
+            long seen = 0;
+            for (int length = 0; length < lengths.length; length++) {
+                seen += lengths[length];
+                if (seen >= target) {
+                    return length;
+                }
+            }
+            return MAX_LENGTH;
+        }
+    }
+}
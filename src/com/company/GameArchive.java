@@ -0,0 +1,95 @@
+package com.company;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Finished games, packed densely so millions of them can be read back quickly. The journal compacts each of its
+ * segment files into one archive file, games-NNNNNNNN.dat, once every game in the segment is finished or has been
+ * carried over to the next segment. Each file is just games one after another in GameRecord's archive format.
+ */
+public class GameArchive {
+
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".dat";
+
+    private GameArchive() {
+    }
+
+    /**
+     * Writes the games to a temporary file and then moves it into place, so a crash never leaves half a file behind
+     * and writing the same file twice just replaces it.
+     */
+    public static void write(Path archiveDir, long number, Collection<GameRecord> games) throws IOException {
+        Files.createDirectories(archiveDir);
+        Path file = archiveDir.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+        Path temporary = archiveDir.resolve(file.getFileName() + ".tmp");
+        byte[] scratch = new byte[256];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary),
+                64 * 1024))) {
+            for (GameRecord game : games) {
+                if (game.getMoveCount() > GameRecord.MAX_MOVES) {
+                    // only two players picking full columns over and over gets here, it's not worth keeping
+                    Log.warn("Not archiving match " + game.getMatchId() + ", it has " + game.getMoveCount()
+                            + " moves");
+                    continue;
+                }
+                if (game.maxEncodedLength() > scratch.length) {
+                    scratch = new byte[game.maxEncodedLength()];
+                }
+                game.writeTo(out, scratch);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return every archive file in the directory, oldest first
+     */
+    public static List<Path> files(Path archiveDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(archiveDir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(archiveDir, PREFIX + "*" + SUFFIX)) {
+            entries.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Streams every game in one archive file without loading the file into memory.
+     */
+    public static void scan(Path file, Consumer<GameRecord> games) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            scan(stream, games);
+        }
+    }
+
+    public static void scan(InputStream stream, Consumer<GameRecord> games) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        GameRecord game;
+        while ((game = GameRecord.readFrom(in)) != null) {
+            games.accept(game);
+        }
+    }
+}
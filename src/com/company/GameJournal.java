@@ -0,0 +1,481 @@
+package com.company;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of every match, so matches in progress survive a restart and finished games are kept.
+ *
+ * Match threads never touch the disk. Each record is copied into an in-memory buffer under a lock that's only held
+ * for the copy, and one writer thread swaps that buffer for an empty one, writes everything in it as a single batch
+ * and forces it to disk. Records that arrive while a batch is being forced go into the next batch, so the busier the
+ * server the more moves share each fsync (group commit). If the server crashes, at most the last batch is lost.
+ *
+ * The journal is a series of segment files, journal-NNNNNNNN.log. Each batch in a segment is [length, CRC32,
+ * records], so a batch that was only partly written when the server died is recognised and ignored. Once a segment
+ * is big enough the writer starts a new one that begins with a checkpoint of every match still in progress, which
+ * makes each segment self-contained: the old one is then compacted in the background, its finished games written
+ * to the GameArchive and the segment deleted. Starting the server does the same with whatever segments it finds,
+ * and the matches that were in progress are kept as recovered games until their players come back.
+ */
+public class GameJournal implements Closeable {
+
+    private static final byte SEGMENT = 1, START = 2, MOVE = 3, END = 4, CHECKPOINT = 5;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int BATCH_HEADER = 8;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentLimit;
+    private final boolean fsync;
+    private final AtomicLong disabledMatchIds = new AtomicLong(1);
+
+    // everything below is guarded by lock, apart from the segment which only the writer thread uses
+    private final Object lock = new Object();
+    private ByteBuffer filling = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private final Map<Long, GameRecord> inFlight = new HashMap<>();
+    private long nextMatchId = 1;
+    private boolean closed;
+
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentSize;
+    private final CRC32 crc = new CRC32();
+    private final List<GameRecord> recovered = new ArrayList<>();
+    private Thread writer;
+    private ExecutorService compactor;
+
+    private GameJournal(boolean enabled, Path directory, long segmentLimit, boolean fsync) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentLimit = segmentLimit;
+        this.fsync = fsync;
+    }
+
+    /**
+     * A journal that records nothing, for when the server runs without one. It still hands out match numbers.
+     */
+    public static GameJournal disabled() {
+        return new GameJournal(false, null, 0, false);
+    }
+
+    /**
+     * Opens the journal in the given directory, recovering whatever was in progress when the server last stopped.
+     *
+     * @param directory    - where the segments go, finished games go in its archive subdirectory
+     * @param segmentLimit - bytes after which the writer starts a new segment and compacts the old one
+     * @param fsync        - force every batch to disk before writing the next one
+     */
+    public static GameJournal open(Path directory, long segmentLimit, boolean fsync) throws IOException {
+        GameJournal journal = new GameJournal(true, directory, segmentLimit, fsync);
+        journal.recover();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segmentFiles();
+        Replay replay = new Replay();
+        for (Path file : segments) {
+            readSegment(file, replay);
+        }
+        inFlight.putAll(replay.inFlight);
+        nextMatchId = replay.nextMatchId;
+        recovered.addAll(replay.inFlight.values());
+
+        segmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+        startSegment(checkpoint());
+
+        compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "connect4-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Path file : segments) {
+            compactor.execute(() -> compact(file));
+        }
+        writer = new Thread(this::writeBatches, "connect4-journal");
+        writer.setDaemon(true);
+        writer.start();
+        // anything still in memory gets written out when the server is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "connect4-journal-close"));
+    }
+
+    /**
+     * @return the matches that were still in progress when the server stopped, in no particular order
+     */
+    public List<GameRecord> getRecoveredGames() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * Records the start of a match.
+     *
+     * @param opponent - GameRecord.HUMAN, or the difficulty's ordinal + 1 for a match against the computer
+     * @param geometry - the board the match is played on
+     * @param tokens   - each seat's session token so the players can come back after a restart, 0 for none
+     * @return the match's number, unique across restarts when the journal is enabled
+     */
+    public long matchStarted(int opponent, BoardGeometry geometry, long... tokens) {
+        if (!enabled) {
+            return disabledMatchIds.getAndIncrement();
+        }
+        synchronized (lock) {
+            long matchId = nextMatchId++;
+            GameRecord game = new GameRecord(matchId, System.currentTimeMillis(), opponent, geometry);
+            for (int seat = 0; seat < tokens.length; seat++) {
+                game.setToken(seat, tokens[seat]);
+            }
+            inFlight.put(matchId, game);
+            ByteBuffer buffer = reserve(37);
+            buffer.put(START).putLong(matchId).putLong(game.getStartMillis()).put((byte) opponent);
+            putGeometry(buffer, geometry).putLong(game.getToken(0)).putLong(game.getToken(1));
+            lock.notify();
+            return matchId;
+        }
+    }
+
+    /**
+     * Records a column being picked, full or not.
+     */
+    public void movePlayed(long matchId, int column, int seat) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            GameRecord game = inFlight.get(matchId);
+            if (game == null) {
+                return;
+            }
+            int millis = millisSinceStart(game);
+            game.addMove(column, seat, millis);
+            ByteBuffer buffer = reserve(15);
+            buffer.put(MOVE).putLong(matchId).put((byte) column).put((byte) seat).putInt(millis);
+            lock.notify();
+        }
+    }
+
+    /**
+     * Records how a match ended, after which it's only kept in the journal until it's compacted into the archive.
+     *
+     * @param result - one of GameRecord's results
+     */
+    public void matchEnded(long matchId, int result) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            GameRecord game = inFlight.remove(matchId);
+            if (game == null) {
+                return;
+            }
+            int millis = millisSinceStart(game);
+            ByteBuffer buffer = reserve(14);
+            buffer.put(END).putLong(matchId).put((byte) result).putInt(millis);
+            lock.notify();
+        }
+    }
+
+    private static int millisSinceStart(GameRecord game) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, System.currentTimeMillis() - game.getStartMillis()));
+    }
+
+    /**
+     * @return the filling buffer with room for at least the given number of bytes
+     */
+    private ByteBuffer reserve(int bytes) {
+        if (filling.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(filling.capacity() * 2, filling.position() + bytes));
+            filling.flip();
+            filling = bigger.put(filling);
+        }
+        return filling;
+    }
+
+    /**
+     * The writer thread: waits for records, writes them as one batch, and starts a new segment when this one is
+     * full.
+     */
+    private void writeBatches() {
+        while (true) {
+            ByteBuffer batch;
+            synchronized (lock) {
+                while (filling.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (filling.position() == 0) {
+                    break;
+                }
+                batch = filling;
+                filling = writing;
+                writing = batch;
+            }
+            try {
+                batch.flip();
+                writeBatch(batch);
+                batch.clear();
+                if (segmentSize >= segmentLimit) {
+                    rollSegment();
+                }
+            } catch (IOException e) {
+                Log.error("Couldn't write to the game journal, matches aren't being recorded", e);
+                batch.clear();
+            }
+        }
+        try {
+            segment.force(true);
+            segment.close();
+        } catch (IOException e) {
+            Log.error("Couldn't close the game journal", e);
+        }
+    }
+
+    private void writeBatch(ByteBuffer records) throws IOException {
+        crc.reset();
+        crc.update(records.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER);
+        header.putInt(records.remaining()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] buffers = {header, records};
+        long length = header.remaining() + records.remaining();
+        while (records.hasRemaining()) {
+            segment.write(buffers);
+        }
+        segmentSize += length;
+        if (fsync) {
+            segment.force(false);
+        }
+    }
+
+    /**
+     * Finishes the current segment and starts the next one with a checkpoint of the matches in progress. Records
+     * added before the checkpoint was taken still belong in the old segment, later ones go after the checkpoint.
+     */
+    private void rollSegment() throws IOException {
+        ByteBuffer pending;
+        ByteBuffer checkpoint;
+        synchronized (lock) {
+            filling.flip();
+            pending = ByteBuffer.allocate(filling.remaining()).put(filling).flip();
+            filling.clear();
+            checkpoint = checkpoint();
+        }
+        if (pending.hasRemaining()) {
+            writeBatch(pending);
+        }
+        segment.force(true);
+        segment.close();
+        Path finished = segmentFile(segmentNumber);
+        startSegment(checkpoint);
+        compactor.execute(() -> compact(finished));
+    }
+
+    /**
+     * @return a batch with the next match number and every match in progress. Called holding the lock.
+     */
+    private ByteBuffer checkpoint() {
+        int size = 9;
+        for (GameRecord game : inFlight.values()) {
+            size += 41 + game.getMoveCount() * 5;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(SEGMENT).putLong(nextMatchId);
+        for (GameRecord game : inFlight.values()) {
+            buffer.put(CHECKPOINT).putLong(game.getMatchId()).putLong(game.getStartMillis())
+                    .put((byte) game.getOpponent());
+            putGeometry(buffer, game.getGeometry()).putLong(game.getToken(0)).putLong(game.getToken(1))
+                    .putInt(game.getMoveCount());
+            for (int move = 0; move < game.getMoveCount(); move++) {
+                buffer.put((byte) (game.getSeat(move) << 7 | game.getColumn(move))).putInt(game.getMoveMillis(move));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer putGeometry(ByteBuffer buffer, BoardGeometry geometry) {
+        return buffer.put((byte) geometry.getRows()).put((byte) geometry.getColumns())
+                .put((byte) geometry.getWinLength());
+    }
+
+    private static BoardGeometry getGeometry(ByteBuffer records) {
+        return new BoardGeometry(records.get(), records.get(), records.get());
+    }
+
+    private void startSegment(ByteBuffer checkpoint) throws IOException {
+        segmentNumber++;
+        segment = FileChannel.open(segmentFile(segmentNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentSize = 0;
+        writeBatch(checkpoint);
+        segment.force(true);
+    }
+
+    /**
+     * Archives the finished games in a segment that's no longer being written to, then deletes it. Doing it twice
+     * (if the server stopped half way through) writes the same archive file again.
+     */
+    private void compact(Path file) {
+        try {
+            Replay replay = new Replay();
+            readSegment(file, replay);
+            if (!replay.finished.isEmpty()) {
+                GameArchive.write(directory.resolve("archive"), segmentNumber(file), replay.finished);
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            Log.error("Couldn't compact " + file + ", it will be tried again on the next restart", e);
+        }
+    }
+
+    /**
+     * Reads every complete batch in a segment. A batch that's cut short or fails its CRC can only be the last one
+     * written before a crash, so reading stops there.
+     */
+    private static void readSegment(Path file, Replay replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file),
+                64 * 1024))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] records;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length < 0 || length > 64 * 1024 * 1024) {
+                        break;
+                    }
+                    records = new byte[length];
+                    in.readFully(records);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(records);
+                if ((int) crc.getValue() != expectedCrc) {
+                    Log.warn("Ignoring a partly written batch at the end of " + file);
+                    break;
+                }
+                replay.apply(ByteBuffer.wrap(records));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the matches from journal records.
+     */
+    private static class Replay {
+
+        final Map<Long, GameRecord> inFlight = new HashMap<>();
+        final List<GameRecord> finished = new ArrayList<>();
+        long nextMatchId = 1;
+
+        void apply(ByteBuffer records) {
+            while (records.hasRemaining()) {
+                byte type = records.get();
+                if (type == SEGMENT) {
+                    nextMatchId = Math.max(nextMatchId, records.getLong());
+                    continue;
+                }
+                long matchId = records.getLong();
+                nextMatchId = Math.max(nextMatchId, matchId + 1);
+                if (type == START) {
+                    GameRecord game = new GameRecord(matchId, records.getLong(), records.get(), getGeometry(records));
+                    game.setToken(0, records.getLong());
+                    game.setToken(1, records.getLong());
+                    inFlight.put(matchId, game);
+                } else if (type == CHECKPOINT) {
+                    GameRecord game = new GameRecord(matchId, records.getLong(), records.get(), getGeometry(records));
+                    game.setToken(0, records.getLong());
+                    game.setToken(1, records.getLong());
+                    int moves = records.getInt();
+                    for (int move = 0; move < moves; move++) {
+                        byte packed = records.get();
+                        game.addMove(packed & 0x7F, (packed >> 7) & 1, records.getInt());
+                    }
+                    inFlight.put(matchId, game);
+                } else if (type == MOVE) {
+                    int column = records.get();
+                    int seat = records.get();
+                    int millis = records.getInt();
+                    GameRecord game = inFlight.get(matchId);
+                    if (game != null) {
+                        game.addMove(column, seat, millis);
+                    }
+                } else if (type == END) {
+                    int result = records.get();
+                    int millis = records.getInt();
+                    GameRecord game = inFlight.remove(matchId);
+                    if (game != null) {
+                        game.finish(result, millis);
+                        finished.add(game);
+                    }
+                } else {
+                    throw new IllegalStateException("Unknown journal record type " + type);
+                }
+            }
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            entries.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Writes out everything that's been recorded and stops the writer. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notify();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            compactor.shutdown();
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.company;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Everything that's kept about one game: who played, every column picked in order with when it was picked, and
+ * how it ended. The journal keeps one of these for every match in progress, and finished ones are written to the
+ * archive (see GameArchive) in a dense format.
+ *
+ * Moves are every column a player picked, including full columns. The original rules pass the turn on a full
+ * column, so replaying the moves in order with BitBoard.play() always rebuilds the same board and turn.
+ */
+public class GameRecord {
+
+    public static final int IN_PROGRESS = -1, PLAYER_ONE_WON = 0, PLAYER_TWO_WON = 1, DRAW = 2, ABANDONED = 3;
+
+    // who player 2 is: a person, or the computer at Difficulty.values()[opponent - 1]
+    public static final int HUMAN = 0;
+
+    // the most moves a game can have in the archive. Full columns are moves too, so this is twice the biggest board
+    public static final int MAX_MOVES = 2 * BoardGeometry.MAX_SIZE * BoardGeometry.MAX_SIZE;
+    // the longest a game can be in the archive format, a longer length read back means the file is corrupt
+    private static final int MAX_ENCODED_LENGTH = maxEncodedLength(MAX_MOVES);
+
+    private final long matchId;
+    private final long startMillis;
+    private final int opponent;
+    private final BoardGeometry geometry;
+    // each move is seat << 7 | column
+    private byte[] moves = new byte[BitBoard.ROWS * BitBoard.COLUMNS];
+    // milliseconds after the start of the match that each move was made
+    private int[] moveMillis = new int[BitBoard.ROWS * BitBoard.COLUMNS];
+    private int moveCount;
+    private int result = IN_PROGRESS;
+    private int endMillis;
+    // each seat's session token while the match is in progress (see SessionRegistry), never archived
+    private final long[] tokens = new long[2];
+
+    /**
+     * @param matchId     - the match's number, unique across restarts
+     * @param startMillis - wall clock time the match started
+     * @param opponent    - HUMAN, or Difficulty.ordinal() + 1 for a match against the computer
+     * @param geometry    - the board the match is played on
+     */
+    public GameRecord(long matchId, long startMillis, int opponent, BoardGeometry geometry) {
+        this.matchId = matchId;
+        this.startMillis = startMillis;
+        this.opponent = opponent;
+        this.geometry = geometry;
+    }
+
+    /**
+     * @param column - the column that was picked, from 0
+     * @param seat   - 0 for player 1, 1 for player 2
+     * @param millis - milliseconds since the match started
+     */
+    public void addMove(int column, int seat, int millis) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+            moveMillis = Arrays.copyOf(moveMillis, moveCount * 2);
+        }
+        moves[moveCount] = (byte) (seat << 7 | column);
+        moveMillis[moveCount] = millis;
+        moveCount++;
+    }
+
+    public void finish(int result, int millis) {
+        this.result = result;
+        this.endMillis = millis;
+    }
+
+    public long getMatchId() {
+        return matchId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public int getOpponent() {
+        return opponent;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getColumn(int move) {
+        return moves[move] & 0x7F;
+    }
+
+    public int getSeat(int move) {
+        return (moves[move] >> 7) & 1;
+    }
+
+    public int getMoveMillis(int move) {
+        return moveMillis[move];
+    }
+
+    /**
+     * @param seat  - 0 for player 1, 1 for player 2
+     * @param token - the seat's session token, or 0 for the computer
+     */
+    public void setToken(int seat, long token) {
+        tokens[seat] = token;
+    }
+
+    public long getToken(int seat) {
+        return tokens[seat];
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public int getEndMillis() {
+        return endMillis;
+    }
+
+    /**
+     * @return the board after every move so far
+     */
+    public BitBoard replay() {
+        BitBoard board = new BitBoard(geometry);
+        replayOnto(board);
+        return board;
+    }
+
+    /**
+     * Plays every move so far onto a board that's already been reset.
+     */
+    public void replayOnto(BitBoard board) {
+        for (int move = 0; move < moveCount; move++) {
+            board.play(getColumn(move), getSeat(move));
+        }
+    }
+
+    /**
+     * When a game is over. Both servers check this after every move and GameAnalyzer checks it when replaying games,
+     * so a replayed game always ends on the same move it ended on live. Only the player who dropped the last disc
+     * can have just won, and a full column doesn't drop a disc, so it can't end the game.
+     *
+     * @param board - the board straight after a move
+     * @return PLAYER_ONE_WON or PLAYER_TWO_WON, DRAW when the board is full, or IN_PROGRESS
+     */
+    public static int outcome(BitBoard board) {
+        int lastPlayer = board.getLastPlayer();
+        if (lastPlayer != -1 && board.hasWon(lastPlayer)) {
+            return lastPlayer == 0 ? PLAYER_ONE_WON : PLAYER_TWO_WON;
+        }
+        return board.isFull() ? DRAW : IN_PROGRESS;
+    }
+
+    /**
+     * @return the seat whose turn it is, 0 for player 1
+     */
+    public int nextSeat() {
+        return moveCount == 0 ? 0 : 1 - getSeat(moveCount - 1);
+    }
+
+    /**
+     * Writes the game in the archive format: a length, then the game, so a reader can skip games it doesn't want.
+     * <pre>
+     *   varint  length of the rest
+     *   long    match id
+     *   long    start time
+     *   byte    opponent
+     *   bytes   rows, columns, win length
+     *   byte    result
+     *   varint  move count
+     *   bytes   one per move, seat << 7 | column
+     *   varints milliseconds since the previous move (the first since the start), then until the end
+     * </pre>
+     * A typical 20 move game takes around 60 bytes. Games with more than MAX_MOVES moves can't be written.
+     */
+    public void writeTo(DataOutputStream out, byte[] scratch) throws IOException {
+        if (moveCount > MAX_MOVES) {
+            throw new IllegalStateException("Match " + matchId + " has too many moves to archive");
+        }
+        int length = 0;
+        length = putLong(scratch, length, matchId);
+        length = putLong(scratch, length, startMillis);
+        scratch[length++] = (byte) opponent;
+        scratch[length++] = (byte) geometry.getRows();
+        scratch[length++] = (byte) geometry.getColumns();
+        scratch[length++] = (byte) geometry.getWinLength();
+        scratch[length++] = (byte) result;
+        length = putVarint(scratch, length, moveCount);
+        System.arraycopy(moves, 0, scratch, length, moveCount);
+        length += moveCount;
+        int previous = 0;
+        for (int move = 0; move < moveCount; move++) {
+            length = putVarint(scratch, length, Math.max(0, moveMillis[move] - previous));
+            previous = moveMillis[move];
+        }
+        length = putVarint(scratch, length, Math.max(0, endMillis - previous));
+        writeVarint(out, length);
+        out.write(scratch, 0, length);
+    }
+
+    /**
+     * @return the most bytes writeTo() needs for this game's scratch buffer
+     */
+    public int maxEncodedLength() {
+        return maxEncodedLength(moveCount);
+    }
+
+    private static int maxEncodedLength(int moveCount) {
+        return 8 + 8 + 5 + 5 + moveCount + (moveCount + 1) * 5;
+    }
+
+    /**
+     * Reads a game written by writeTo(). The length is checked before anything is allocated, so a corrupt length
+     * can't ask for gigabytes.
+     *
+     * @return the game, or null at the end of the stream
+     * @throws IOException if the stream ends part way through a game or the game doesn't make sense
+     */
+    public static GameRecord readFrom(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        int length = readVarint(in, first);
+        if (length < 1 || length > MAX_ENCODED_LENGTH) {
+            throw new IOException("Archive has a game " + length + " bytes long, it can't be more than "
+                    + MAX_ENCODED_LENGTH);
+        }
+        // the whole game in one read, then everything else comes out of the array instead of a byte at a time
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        ByteBuffer game = ByteBuffer.wrap(bytes);
+        try {
+            GameRecord record = new GameRecord(game.getLong(), game.getLong(), game.get(),
+                    new BoardGeometry(game.get(), game.get(), game.get()));
+            int columns = record.getGeometry().getColumns();
+            int result = game.get();
+            int moveCount = getVarint(game);
+            int movesAt = game.position();
+            game.position(movesAt + moveCount);
+            int millis = 0;
+            for (int move = 0; move < moveCount; move++) {
+                millis += getVarint(game);
+                int column = bytes[movesAt + move] & 0x7F;
+                // otherwise it's only found out when a replay runs off the side of the board
+                if (column >= columns) {
+                    throw new IOException("Archive has a game that doesn't make sense");
+                }
+                record.addMove(column, (bytes[movesAt + move] >> 7) & 1, millis);
+            }
+            record.finish(result, millis + getVarint(game));
+            return record;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Archive has a game that doesn't make sense", e);
+        }
+    }
+
+    private static int putLong(byte[] bytes, int at, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[at++] = (byte) (value >>> shift);
+        }
+        return at;
+    }
+
+    private static int putVarint(byte[] bytes, int at, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[at++] = (byte) value;
+        return at;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * @param first - the first byte, already read
+     */
+    private static int readVarint(DataInputStream in, int first) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b = first;
+        while (true) {
+            if (b == -1) {
+                throw new EOFException("Archive ends in the middle of a game");
+            }
+            if (shift > 28) {
+                throw new IOException("Archive has a length that's too long to be a length");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            b = in.read();
+        }
+    }
+
+    private static int getVarint(ByteBuffer bytes) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = bytes.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
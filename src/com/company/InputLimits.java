@@ -0,0 +1,101 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How much a player is allowed to send, and how long they're allowed to take. A person playing over nc sends a line
+ * every few seconds at most, so anything far beyond that is a broken or hostile client. Without limits one of those
+ * could send lines as fast as the network allows (every bad one used to cost a parse, an exception and a reply),
+ * send one endless line to fill the server's memory, or hold a match thread forever by never moving. Players who
+ * break a limit are disconnected straight away rather than answered, which is the cheapest thing the server can do.
+ *
+ * Only lines the game has no use for count against the rate. A move made on the player's turn, or the R that gets
+ * them into a match, is already held back by the game itself (they can't move again until their opponent has), and
+ * a bot replying the moment it's told it's their turn needs half the board's cells and more for a single game.
+ */
+public final class InputLimits {
+
+    public static final InputLimits DEFAULT = new InputLimits(64, 10, 20, TimeUnit.MINUTES.toMillis(2));
+
+    private final int maxLineLength;
+    private final double linesPerSecond;
+    private final int burstLines;
+    private final long turnTimeoutMillis;
+
+    /**
+     * @param maxLineLength     - the longest line a player can send, the longest anyone needs is a session token
+     * @param linesPerSecond    - how many lines a player can keep sending every second
+     * @param burstLines        - how many lines a player can send at once, after being quiet for a while
+     * @param turnTimeoutMillis - how long a player has to make their move before they're disconnected
+     */
+    public InputLimits(int maxLineLength, double linesPerSecond, int burstLines, long turnTimeoutMillis) {
+        if (maxLineLength < 1 || linesPerSecond <= 0 || burstLines < 1 || turnTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Input limits have to be more than 0");
+        }
+        this.maxLineLength = maxLineLength;
+        this.linesPerSecond = linesPerSecond;
+        this.burstLines = burstLines;
+        this.turnTimeoutMillis = turnTimeoutMillis;
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public long getTurnTimeoutMillis() {
+        return turnTimeoutMillis;
+    }
+
+    /**
+     * @return a rate limiter for one connection
+     */
+    public RateLimiter newRateLimiter() {
+        return new RateLimiter(linesPerSecond, burstLines);
+    }
+
+    @Override
+    public String toString() {
+        return "max line " + maxLineLength + ", " + linesPerSecond + " lines a second (" + burstLines
+                + " at once), " + turnTimeoutMillis / 1000 + " seconds a turn";
+    }
+
+    /**
+     * A token bucket: every line takes a token, and tokens come back at a steady rate up to the burst size. Nothing
+     * runs in the background, the tokens that came back since the last line are added up when the next one arrives.
+     * Each connection has its own, only ever used by the thread reading that connection, so it isn't synchronized.
+     */
+    public static final class RateLimiter {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        RateLimiter(double perSecond, int capacity) {
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        /**
+         * Gives back the token a line took, once the game has used the line as a move or to get ready.
+         */
+        public void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        /**
+         * @return true if the line can be used, false if the player is sending too fast
+         */
+        public boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.company;
+
+import java.io.IOException;
+
+/**
+ * A player broke one of the InputLimits. It's an IOException so the code reading from the player treats it like
+ * any other broken connection, the message is what the player is told before they're disconnected.
+ */
+public class InputRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InputRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,149 @@
+package com.company;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations from many threads at once without locking, for the live server metrics.
+ *
+ * Values go into log-linear buckets: every power of two is split into 8 equal buckets, so a percentile read back is
+ * never more than 12.5% above the real value, and the histogram takes the same few KB of memory however many values
+ * it records. Each bucket is a LongAdder, so threads recording at the same time don't fight over one counter.
+ */
+public class LatencyHistogram {
+
+    // 8 buckets per power of two
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos - the duration to record, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that would land in the given bucket
+     */
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowest = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Reads the histogram while it's still being written to, so a value recorded during the read may or may not be
+     * counted. That's fine for monitoring.
+     *
+     * @param percentile - between 0 and 100
+     * @return the value in nanoseconds below which that percentage of the recorded values fall, or 0 if nothing has
+     * been recorded
+     */
+    public long percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Buckets for one thread to record into without touching the shared adders, then add to the histogram in one go.
+     * Worth it for something like GameAnalyzer that records millions of values a second, where even uncontended
+     * LongAdders cost more than the work being timed.
+     */
+    public static class Local {
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long max;
+
+        /**
+         * @param nanos - the duration to record, negative values count as 0
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[bucketOf(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Adds everything recorded so far to the histogram and starts again from empty.
+         */
+        public void addTo(LatencyHistogram histogram) {
+            if (count == 0) {
+                return;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets[i] != 0) {
+                    histogram.buckets[i].add(buckets[i]);
+                    buckets[i] = 0;
+                }
+            }
+            histogram.count.add(count);
+            histogram.sum.add(sum);
+            histogram.max.accumulate(max);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+    }
+}
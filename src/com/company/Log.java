@@ -0,0 +1,151 @@
+package com.company;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server console logging that never makes a match wait. Messages below the configured level are skipped before
+ * anything is built, the rest are put on a bounded queue and printed by one background thread in batches.
+ *
+ * If the console can't keep up and the queue fills, new messages are dropped and counted instead of blocking the
+ * thread that logged them. The count is printed once there's room again.
+ */
+public class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int QUEUE_SIZE = 8192;
+
+    private static volatile Level level = Level.INFO;
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private static final LongAdder dropped = new LongAdder();
+    private static final PrintStream console = System.out;
+
+    static {
+        Thread writer = new Thread(Log::writeEntries, "connect4-log");
+        writer.setDaemon(true);
+        writer.start();
+        // print whatever is still queued, e.g. the error that made the server exit
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "connect4-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    private static class Entry {
+        final long time = System.currentTimeMillis();
+        final String thread = Thread.currentThread().getName();
+        final Level level;
+        final String message;
+        final Throwable error;
+
+        Entry(Level level, String message, Throwable error) {
+            this.level = level;
+            this.message = message;
+            this.error = error;
+        }
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * @param name - debug, info, warn or error, in any case
+     */
+    public static void setLevel(String name) {
+        setLevel(Level.valueOf(name.toUpperCase()));
+    }
+
+    /**
+     * Check this before building an expensive message, like a whole board.
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    public static void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    private static void log(Level messageLevel, String message, Throwable error) {
+        if (isEnabled(messageLevel) && !queue.offer(new Entry(messageLevel, message, error))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return messages thrown away because the queue was full
+     */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    private static void writeEntries() {
+        List<Entry> batch = new ArrayList<>();
+        long droppedReported = 0;
+        while (true) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+                long droppedNow = dropped.sum();
+                if (droppedNow != droppedReported) {
+                    console.println(Instant.now() + " WARN  [connect4-log] "
+                            + (droppedNow - droppedReported) + " log messages dropped, the console is too slow");
+                    droppedReported = droppedNow;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void drain() {
+        List<Entry> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private static void write(List<Entry> batch) {
+        StringBuilder text = new StringBuilder();
+        synchronized (console) {
+            for (Entry entry : batch) {
+                text.append(Instant.ofEpochMilli(entry.time)).append(' ')
+                        .append(String.format("%-5s", entry.level)).append(" [").append(entry.thread).append("] ")
+                        .append(entry.message).append(System.lineSeparator());
+                if (entry.error != null) {
+                    console.print(text);
+                    text.setLength(0);
+                    entry.error.printStackTrace(console);
+                }
+            }
+            console.print(text);
+            console.flush();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.company;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that ConnectionThread tasks run on in blocking mode.
+ *
+ * The project targets Java 11, so virtual threads are looked up by reflection. On a Java 21+ runtime
+ * newVirtualThreadPerTaskExecutor() is used, on anything older the server falls back to platform threads.
+ */
+public class MatchExecutors {
+
+    private MatchExecutors() {
+    }
+
+    /**
+     * One platform thread per running match, like the original server, except finished matches give their thread
+     * back to the pool instead of it being thrown away.
+     */
+    public static ExecutorService platform() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "connect4-match-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * One virtual thread per match. A match blocked on readLine() then only holds on to a small heap-allocated stack
+     * instead of an OS thread.
+     */
+    public static ExecutorService virtual() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            Log.warn("Virtual threads need Java 21 or newer, using platform threads instead");
+            return platform();
+        }
+    }
+
+    /**
+     * @param name - "virtual" or "platform"
+     */
+    public static ExecutorService forName(String name) {
+        return name.equals("virtual") ? virtual() : platform();
+    }
+}
@@ -0,0 +1,560 @@
+package com.company;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pairs players up for the blocking server. Instead of assuming sockets arrive in pairs, every new socket gets its
+ * own ready check with a deadline, and players are paired in the order they type R rather than the order they
+ * connected. A slow or dead connection therefore only ever holds up itself.
+ *
+ * Ready players are added to a lock-free queue from whichever thread ran their ready check. A single matchmaker
+ * thread takes them off the queue and pairs them, which means it's also the only thread that ever checks a waiting
+ * player's socket, so dropped players can be evicted without racing the pairing.
+ */
+public class Matchmaker implements Runnable {
+
+    // how often the player waiting for an opponent is checked for a dropped socket
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ExecutorService executor;
+    private final long readyTimeoutMillis;
+    private final Queue<PlayerConnection> readyPlayers = new ConcurrentLinkedQueue<>();
+    private volatile Thread matchmakerThread;
+    // the player waiting for an opponent on each size of board, only touched by the matchmaker thread
+    private final Map<BoardGeometry, PlayerConnection> waitingPlayers = new HashMap<>();
+
+    private final AtomicInteger playersInReadyCheck = new AtomicInteger();
+    private final AtomicInteger playersWaiting = new AtomicInteger();
+    private final LongAdder matchesMade = new LongAdder();
+    private final LongAdder playersEvicted = new LongAdder();
+    private final LongAdder readyTimeouts = new LongAdder();
+    private final LongAdder totalTimeToMatchNanos = new LongAdder();
+    private final LongAccumulator maxTimeToMatchNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder computerMatches = new LongAdder();
+
+    // single player matches share one search cache (2^19 buckets, 16MB) and the common fork/join pool
+    private final TranspositionTable computerCache = new TranspositionTable(19);
+    // and the computer's answers, from the opening book if there is one and from earlier searches (around 6MB)
+    private final PositionCache computerAnswers = new PositionCache(1 << 16);
+    private OpeningBook openingBook;
+    private final Map<Difficulty, Long> computerThinkMillis = new EnumMap<>(Difficulty.class);
+
+    // matches that are being played right now, by the number players type to watch them
+    private final Map<Long, SpectatorBroadcast> liveMatches = new ConcurrentHashMap<>();
+
+    // gives every match its number and records its moves, see GameJournal
+    private GameJournal journal = GameJournal.disabled();
+    // matches that were in progress when the server last stopped, by match number, until their players come back
+    private final Map<Long, RecoveredMatch> recoveredMatches = new ConcurrentHashMap<>();
+    private long recoveredAt;
+
+    // lets players whose connection drops come back to their match
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
+    private long reconnectGraceMillis = TimeUnit.SECONDS.toMillis(30);
+    private InputLimits inputLimits = InputLimits.DEFAULT;
+
+    /**
+     * @param executor           - runs the ready checks and the matches themselves
+     * @param readyTimeoutMillis - how long a player has to type R before they're disconnected
+     */
+    public Matchmaker(ExecutorService executor, long readyTimeoutMillis) {
+        this.executor = executor;
+        this.readyTimeoutMillis = readyTimeoutMillis;
+        for (Difficulty difficulty : Difficulty.values()) {
+            computerThinkMillis.put(difficulty, difficulty.getDefaultThinkMillis());
+        }
+    }
+
+    /**
+     * Changes how long the computer thinks per move at one difficulty. Call before start().
+     */
+    public void setComputerThinkMillis(Difficulty difficulty, long thinkMillis) {
+        computerThinkMillis.put(difficulty, thinkMillis);
+    }
+
+    /**
+     * Changes how long a match waits for a disconnected player to come back, and how long after a restart the
+     * players of a recovered match have to return. Call before setJournal() and start().
+     */
+    public void setReconnectGraceMillis(long graceMillis) {
+        reconnectGraceMillis = graceMillis;
+    }
+
+    /**
+     * Changes how much players can send and how long they have for each turn. Call before start().
+     */
+    public void setInputLimits(InputLimits limits) {
+        inputLimits = limits;
+    }
+
+    /**
+     * Lets the computer play early moves from a book instead of searching them. Call before start().
+     */
+    public void setOpeningBook(OpeningBook book) {
+        openingBook = book;
+    }
+
+    /**
+     * Tells players to reconnect to this address instead of the one they connected to, for servers behind the
+     * shard router. Call before start().
+     *
+     * @param address - host:port
+     */
+    public void setAdvertisedAddress(String address) {
+        sessionRegistry.setAddress(address);
+    }
+
+    /**
+     * Records every match in the journal, and keeps the matches it recovered so their players can come back to
+     * them with their session tokens. Call before start().
+     */
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+        recoveredAt = System.nanoTime();
+        for (GameRecord game : journal.getRecoveredGames()) {
+            boolean computer = game.getOpponent() != GameRecord.HUMAN;
+            if (game.getToken(0) == 0 || (!computer && game.getToken(1) == 0)) {
+                // without tokens nobody can claim it
+                journal.matchEnded(game.getMatchId(), GameRecord.ABANDONED);
+                continue;
+            }
+            SessionRegistry.Session playerOne = sessionRegistry.open(game.getToken(0), game.getMatchId(), 0);
+            SessionRegistry.Session playerTwo = computer ? null
+                    : sessionRegistry.open(game.getToken(1), game.getMatchId(), 1);
+            recoveredMatches.put(game.getMatchId(), new RecoveredMatch(game, playerOne, playerTwo));
+        }
+        if (!recoveredMatches.isEmpty()) {
+            Log.info("Recovered " + recoveredMatches.size() + " matches that were in progress when the server "
+                    + "stopped, their players have " + reconnectGraceMillis / 1000 + " seconds to come back");
+        }
+    }
+
+    /**
+     * @return matches that were in progress when the server last stopped and haven't been resumed
+     */
+    public int getRecoveredMatches() {
+        return recoveredMatches.size();
+    }
+
+    /**
+     * Starts the matchmaker thread that pairs ready players.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "connect4-matchmaker");
+        thread.setDaemon(true);
+        matchmakerThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Takes a newly accepted socket and runs its ready check in the background, so the accept loop never waits on
+     * a player.
+     */
+    public void submit(Socket socket) {
+        playersInReadyCheck.incrementAndGet();
+        executor.execute(() -> readyCheck(socket));
+    }
+
+    /**
+     * Welcomes the player and waits until they type R or run out of time. Ready players are queued for pairing,
+     * players who pick a difficulty start a match against the computer straight away, everyone else is
+     * disconnected.
+     */
+    private void readyCheck(Socket socket) {
+        PlayerConnection player = null;
+        try {
+            player = new PlayerConnection(socket, inputLimits);
+            player.getOutput().println("\nWelcome to connect4");
+            player.getOutput().println("Type R when you're ready to play, you'll be paired with the next ready player");
+            player.getOutput().println("Add a size for a different board, like R 7x8 for 7 rows and 8 columns, or R 8x9x5 to connect 5");
+            player.getOutput().println("Or type E, M or H to play the computer on easy, medium or hard");
+            player.getOutput().println("Or type W to see the matches being played, then W and a match number to watch one");
+            player.getOutput().println("Or type T and your session token to go back to a match you were disconnected from\n");
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readyTimeoutMillis);
+            BoardGeometry geometry;
+            while (true) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    throw new SocketTimeoutException();
+                }
+                socket.setSoTimeout((int) Math.min(remainingMillis, Integer.MAX_VALUE));
+                String line = player.readLine();
+                if (line == null) {
+                    throw new IOException("Player disconnected during ready check");
+                }
+                if (line.toUpperCase().startsWith("R")) {
+                    try {
+                        geometry = BoardGeometry.parse(line.substring(1));
+                        ServerMetrics.get().validInput();
+                        player.inputAccepted();
+                        break;
+                    } catch (IllegalArgumentException e) {
+                        ServerMetrics.get().invalidInput();
+                        player.getOutput().println(e.getMessage());
+                        continue;
+                    }
+                }
+                Difficulty difficulty = Difficulty.fromLetter(line);
+                if (difficulty != null) {
+                    ServerMetrics.get().validInput();
+                    socket.setSoTimeout(0);
+                    computerMatches.increment();
+                    startMatch(new ConnectFour.ConnectionThread(player, newComputer(difficulty)),
+                            difficulty.ordinal() + 1);
+                    return;
+                }
+                if (line.toUpperCase().startsWith("T")) {
+                    ServerMetrics.get().validInput();
+                    // from here on the match may be using the socket
+                    socket.setSoTimeout(0);
+                    if (reconnect(player, line.substring(1))) {
+                        return;
+                    }
+                    continue;
+                }
+                if (line.toUpperCase().startsWith("W")) {
+                    ServerMetrics.get().validInput();
+                    if (watch(player, line.substring(1).trim())) {
+                        socket.setSoTimeout(0);
+                        return;
+                    }
+                    continue;
+                }
+                ServerMetrics.get().invalidInput();
+                player.getOutput().println("Type R when you're ready to play, " +
+                        "you'll be paired with the next ready player");
+            }
+            socket.setSoTimeout(0);
+            player.markReady(geometry);
+            player.getOutput().println("Waiting for an opponent..");
+            playersWaiting.incrementAndGet();
+            ServerMetrics.get().playerWaiting();
+            readyPlayers.add(player);
+            LockSupport.unpark(matchmakerThread);
+        } catch (SocketTimeoutException e) {
+            readyTimeouts.increment();
+            ServerMetrics.get().readyTimedOut();
+            if (player != null) {
+                player.getOutput().println("You took too long to get ready. To play again, please type 'nc localhost 1024'!");
+                player.close();
+            }
+        } catch (InputRejectedException e) {
+            playersEvicted.increment();
+            player.getOutput().println(e.getMessage() + ". To play again, please type 'nc localhost 1024'!");
+            player.close();
+        } catch (IOException e) {
+            playersEvicted.increment();
+            if (player != null) {
+                player.close();
+            } else {
+                closeQuietly(socket);
+            }
+        } finally {
+            playersInReadyCheck.decrementAndGet();
+        }
+    }
+
+    /**
+     * The matchmaker loop. It sleeps until a ready player arrives or it's time to check on the waiting players.
+     */
+    @Override
+    public void run() {
+        long nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+        while (true) {
+            PlayerConnection player;
+            while ((player = readyPlayers.poll()) != null) {
+                pair(player);
+            }
+            if (System.nanoTime() - nextSweep >= 0) {
+                Iterator<PlayerConnection> waiting = waitingPlayers.values().iterator();
+                while (waiting.hasNext()) {
+                    PlayerConnection waitingPlayer = waiting.next();
+                    if (waitingPlayer.isDropped()) {
+                        evict(waitingPlayer);
+                        waiting.remove();
+                    }
+                }
+                expireRecoveredMatches();
+                nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+            }
+            LockSupport.parkNanos(this, SWEEP_INTERVAL_NANOS);
+        }
+    }
+
+    /**
+     * Pairs a newly ready player with whoever is already waiting for the same size of board, provided that player is
+     * still connected. The player who has been waiting longest becomes player 1 and gets the first move.
+     */
+    private void pair(PlayerConnection player) {
+        BoardGeometry geometry = player.getGeometry();
+        PlayerConnection playerOne = waitingPlayers.remove(geometry);
+        if (playerOne != null && playerOne.isDropped()) {
+            evict(playerOne);
+            playerOne = null;
+        }
+        if (playerOne == null) {
+            waitingPlayers.put(geometry, player);
+            return;
+        }
+        playersWaiting.addAndGet(-2);
+        ServerMetrics.get().playersStoppedWaiting(2);
+        long now = System.nanoTime();
+        recordTimeToMatch(now - playerOne.getReadyAt());
+        recordTimeToMatch(now - player.getReadyAt());
+        matchesMade.increment();
+        startMatch(new ConnectFour.ConnectionThread(playerOne, player, geometry), GameRecord.HUMAN);
+    }
+
+    /**
+     * Runs a match and lists it as one that can be watched until it's over.
+     *
+     * @param opponent - who player 2 is, as recorded in the journal (see GameRecord)
+     */
+    private void startMatch(ConnectFour.ConnectionThread match, int opponent) {
+        long tokenOne = sessionRegistry.newToken();
+        long tokenTwo = opponent == GameRecord.HUMAN ? sessionRegistry.newToken() : 0;
+        long matchNumber = journal.matchStarted(opponent, match.getGeometry(), tokenOne, tokenTwo);
+        SessionRegistry.Session playerTwo = tokenTwo == 0 ? null : sessionRegistry.open(tokenTwo, matchNumber, 1);
+        runMatch(match, matchNumber, sessionRegistry.open(tokenOne, matchNumber, 0), playerTwo);
+    }
+
+    private void runMatch(ConnectFour.ConnectionThread match, long matchNumber, SessionRegistry.Session playerOne,
+                          SessionRegistry.Session playerTwo) {
+        SpectatorBroadcast spectators = new SpectatorBroadcast(matchNumber, executor);
+        match.setSpectators(spectators);
+        match.setJournal(journal, matchNumber);
+        match.setSessions(sessionRegistry, playerOne, playerTwo, reconnectGraceMillis);
+        liveMatches.put(matchNumber, spectators);
+        executor.execute(() -> {
+            try {
+                match.run();
+            } finally {
+                liveMatches.remove(matchNumber);
+            }
+        });
+    }
+
+    private Solver newComputer(Difficulty difficulty) {
+        Solver solver = new Solver(computerCache, ForkJoinPool.commonPool(), difficulty,
+                computerThinkMillis.get(difficulty));
+        solver.setOpeningBook(openingBook);
+        solver.setPositionCache(computerAnswers);
+        return solver;
+    }
+
+    /**
+     * Handles T during the ready check: hands the connection to the session with that token, and if it's the last
+     * player a recovered match was waiting for, starts the match again.
+     *
+     * @param player - the player who typed T
+     * @param token  - whatever they typed after the T
+     * @return true if the connection now belongs to the session
+     */
+    private boolean reconnect(PlayerConnection player, String token) {
+        long parsed = SessionRegistry.parse(token);
+        SessionRegistry.Session session = parsed == 0 ? null : sessionRegistry.find(parsed);
+        long matchNumber = session == null ? 0 : session.getMatchId();
+        RecoveredMatch recovered = recoveredMatches.get(matchNumber);
+        if (session != null && recovered == null) {
+            // said before handing over the connection, after that the match could be writing to it too
+            player.getOutput().println("Reconnecting to match " + matchNumber + "..");
+        }
+        if (session == null || !session.reattach(player)) {
+            player.getOutput().println("That token isn't for a match that's still being played, type R to play a new one");
+            return false;
+        }
+        if (recovered == null) {
+            return true;
+        } else if (recovered.isEveryoneBack()) {
+            // only one of the returning players gets to start it
+            if (recoveredMatches.remove(matchNumber, recovered)) {
+                resume(recovered);
+            }
+        } else {
+            player.getOutput().println("Waiting for your opponent to come back to match " + matchNumber + "..");
+        }
+        return true;
+    }
+
+    /**
+     * Carries on a recovered match once everyone is back.
+     */
+    private void resume(RecoveredMatch recovered) {
+        GameRecord game = recovered.game;
+        PlayerConnection playerOne = recovered.playerOne.poll();
+        ConnectFour.ConnectionThread match;
+        if (game.getOpponent() == GameRecord.HUMAN) {
+            match = new ConnectFour.ConnectionThread(playerOne, recovered.playerTwo.poll(), game.getGeometry());
+        } else {
+            match = new ConnectFour.ConnectionThread(playerOne,
+                    newComputer(Difficulty.values()[game.getOpponent() - 1]));
+        }
+        match.resume(game);
+        runMatch(match, game.getMatchId(), recovered.playerOne, recovered.playerTwo);
+    }
+
+    /**
+     * Ends the recovered matches whose players didn't all come back within the grace window after the restart.
+     * Any player who did come back is told the match is over.
+     */
+    private void expireRecoveredMatches() {
+        if (recoveredMatches.isEmpty()
+                || System.nanoTime() - recoveredAt < TimeUnit.MILLISECONDS.toNanos(reconnectGraceMillis)) {
+            return;
+        }
+        for (RecoveredMatch recovered : recoveredMatches.values()) {
+            long matchNumber = recovered.game.getMatchId();
+            if (recoveredMatches.remove(matchNumber, recovered)) {
+                sessionRegistry.close(recovered.playerOne);
+                sessionRegistry.close(recovered.playerTwo);
+                journal.matchEnded(matchNumber, GameRecord.ABANDONED);
+                ServerMetrics.get().matchAbandoned();
+            }
+        }
+    }
+
+    /**
+     * A match from before the restart, waiting for its players to come back.
+     */
+    private static class RecoveredMatch {
+
+        final GameRecord game;
+        final SessionRegistry.Session playerOne;
+        // null when player 2 is the computer
+        final SessionRegistry.Session playerTwo;
+
+        RecoveredMatch(GameRecord game, SessionRegistry.Session playerOne, SessionRegistry.Session playerTwo) {
+            this.game = game;
+            this.playerOne = playerOne;
+            this.playerTwo = playerTwo;
+        }
+
+        boolean isEveryoneBack() {
+            return playerOne.isReturning() && (playerTwo == null || playerTwo.isReturning());
+        }
+    }
+
+    /**
+     * Handles W during the ready check: on its own it lists the live matches, with a number it starts watching
+     * that match.
+     *
+     * @param player      - the player who typed W
+     * @param matchNumber - whatever they typed after the W
+     * @return true if the player is now a spectator and their connection belongs to the match
+     */
+    private boolean watch(PlayerConnection player, String matchNumber) {
+        if (matchNumber.isEmpty()) {
+            if (liveMatches.isEmpty()) {
+                player.getOutput().println("No matches are being played right now");
+            }
+            for (SpectatorBroadcast match : liveMatches.values()) {
+                player.getOutput().println("Match " + match.getMatchNumber() + ": " + match.getMovesPlayed()
+                        + " moves played, " + match.getWatcherCount() + " watching");
+            }
+            return false;
+        }
+        SpectatorBroadcast match = null;
+        try {
+            match = liveMatches.get(Long.parseLong(matchNumber));
+        } catch (NumberFormatException e) {
+            // not a number, same as a match that doesn't exist
+        }
+        if (match == null) {
+            player.getOutput().println("There's no match " + matchNumber + " being played, type W to see them all");
+            return false;
+        }
+        player.getOutput().println("Watching match " + matchNumber + ", you'll be disconnected when it's over");
+        if (!match.watch(player)) {
+            player.getOutput().println("Match " + matchNumber + " has just finished");
+            return false;
+        }
+        return true;
+    }
+
+    private void evict(PlayerConnection player) {
+        playersWaiting.decrementAndGet();
+        ServerMetrics.get().playersStoppedWaiting(1);
+        playersEvicted.increment();
+        player.close();
+    }
+
+    private void recordTimeToMatch(long nanos) {
+        totalTimeToMatchNanos.add(nanos);
+        maxTimeToMatchNanos.accumulate(nanos);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to clean up
+        }
+    }
+
+    /**
+     * @return players that are ready and haven't been paired yet
+     */
+    public int getQueueDepth() {
+        return playersWaiting.get();
+    }
+
+    /**
+     * @return players that have connected but haven't typed R yet
+     */
+    public int getPlayersInReadyCheck() {
+        return playersInReadyCheck.get();
+    }
+
+    public long getMatchesMade() {
+        return matchesMade.sum();
+    }
+
+    public long getComputerMatches() {
+        return computerMatches.sum();
+    }
+
+    public long getPlayersEvicted() {
+        return playersEvicted.sum();
+    }
+
+    public long getReadyTimeouts() {
+        return readyTimeouts.sum();
+    }
+
+    /**
+     * @return average time between a player typing R and being paired, in milliseconds
+     */
+    public double getAverageTimeToMatchMillis() {
+        long players = matchesMade.sum() * 2;
+        return players == 0 ? 0 : totalTimeToMatchNanos.sum() / 1_000_000.0 / players;
+    }
+
+    public double getMaxTimeToMatchMillis() {
+        return maxTimeToMatchNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queue=%d readyCheck=%d matches=%d computerMatches=%d evicted=%d readyTimeouts=%d "
+                        + "avgTimeToMatch=%.1fms maxTimeToMatch=%.1fms recovered=%d bookMoves=%d cachedMoves=%d",
+                getQueueDepth(), getPlayersInReadyCheck(), getMatchesMade(), getComputerMatches(), getPlayersEvicted(),
+                getReadyTimeouts(), getAverageTimeToMatchMillis(), getMaxTimeToMatchMillis(), getRecoveredMatches(),
+                openingBook == null ? 0 : openingBook.getHits(), computerAnswers.getHits());
+    }
+}
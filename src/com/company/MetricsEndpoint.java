@@ -0,0 +1,110 @@
+package com.company;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Makes the ServerMetrics readable from outside the server: always over JMX, and over HTTP at /metrics when a
+ * metrics port is given. The HTTP server only listens on localhost and answers in the Prometheus text format, so
+ * it can be scraped or just read with curl.
+ */
+public class MetricsEndpoint {
+
+    private MetricsEndpoint() {
+    }
+
+    /**
+     * @param metrics  - the metrics to publish
+     * @param httpPort - port for the HTTP endpoint, or 0 for JMX only
+     */
+    public static void start(ServerMetrics metrics, int httpPort) throws IOException {
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "connect4-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(metrics::sample, 1, 1, TimeUnit.SECONDS);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(metrics, new ObjectName("com.company:type=ServerMetrics"));
+        } catch (JMException e) {
+            Log.warn("Couldn't register the metrics with JMX: " + e);
+        }
+
+        if (httpPort > 0) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+            // scrapes are rare, so they share the sampler's thread instead of getting their own
+            server.setExecutor(sampler);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = render(metrics).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream response = exchange.getResponseBody()) {
+                    response.write(body);
+                }
+            });
+            server.start();
+            Log.info("Metrics at http://localhost:" + httpPort + "/metrics");
+        }
+    }
+
+    /**
+     * @return every metric in the Prometheus text format
+     */
+    static String render(ServerMetrics metrics) {
+        StringBuilder text = new StringBuilder();
+        gauge(text, "connect4_connected_sockets", metrics.getConnectedSockets());
+        gauge(text, "connect4_active_matches", metrics.getActiveMatches());
+        counter(text, "connect4_matches_started_total", metrics.getMatchesStarted());
+        counter(text, "connect4_matches_finished_total", metrics.getMatchesFinished());
+        counter(text, "connect4_moves_total", metrics.getMovesPlayed());
+        gauge(text, "connect4_moves_per_second", metrics.getMovesPerSecond());
+        counter(text, "connect4_invalid_inputs_total", metrics.getInvalidInputs());
+        gauge(text, "connect4_invalid_input_rate", metrics.getInvalidInputRate());
+        gauge(text, "connect4_spectators", metrics.getSpectators());
+        counter(text, "connect4_spectators_dropped_total", metrics.getSpectatorsDropped());
+        gauge(text, "connect4_sessions", metrics.getSessions());
+        counter(text, "connect4_reconnects_total", metrics.getReconnects());
+        counter(text, "connect4_matches_abandoned_total", metrics.getMatchesAbandoned());
+        gauge(text, "connect4_players_waiting", metrics.getPlayersWaiting());
+        counter(text, "connect4_lines_too_long_total", metrics.getLinesTooLong());
+        counter(text, "connect4_inputs_rate_limited_total", metrics.getInputsRateLimited());
+        counter(text, "connect4_turn_timeouts_total", metrics.getTurnTimeouts());
+        counter(text, "connect4_ready_timeouts_total", metrics.getReadyTimeouts());
+        counter(text, "connect4_log_messages_dropped_total", metrics.getLogMessagesDropped());
+        summary(text, "connect4_move_latency_seconds", metrics.getMoveLatency());
+        summary(text, "connect4_win_check_seconds", metrics.getWinCheckTime());
+        summary(text, "connect4_match_duration_seconds", metrics.getMatchDuration());
+        return text.toString();
+    }
+
+    private static void gauge(StringBuilder text, String name, double value) {
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.percentile(quantile * 100) / 1e9).append('\n');
+        }
+        text.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,740 @@
+package com.company;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking version of the server. Instead of one thread per match blocking on readLine(), every player's
+ * SocketChannel is registered with a Selector, and a small pool of event loops reads whatever bytes have arrived,
+ * parses them into commands and runs the same Connect 4 rules as ConnectionThread. Each connection speaks either the
+ * text protocol nc uses or the binary one bots use (see WireProtocol), and the two can play against each other.
+ *
+ * Like the blocking server's Matchmaker, players are paired in the order they get ready rather than the order they
+ * connect. New connections go to the lobby, an event loop of its own that welcomes them, waits for them to send R and
+ * pairs each ready player with the one already waiting, if there is one. A connection that never gets ready only ever
+ * holds up itself: it's disconnected when its ready timeout runs out, and a waiting player who disconnects is
+ * forgotten. Once paired, both players are handed together to one of the game event loops, so a match is only ever
+ * touched by one thread and none of the game state needs locking.
+ */
+public class NioServer {
+
+    private final int portNumber;
+    private final EventLoop[] eventLoops;
+    private final GameJournal journal;
+    private final long readyTimeoutMillis;
+    private final InputLimits limits;
+
+    /**
+     * @param portNumber         - port to listen on, the game uses 1024 by default
+     * @param loopCount          - how many event loop threads to share the matches between, the lobby has one more
+     * @param journal            - records every match, see GameJournal
+     * @param readyTimeoutMillis - how long both players have to get ready before they're disconnected
+     * @param limits             - how much players can send and how long they have for each turn
+     */
+    public NioServer(int portNumber, int loopCount, GameJournal journal, long readyTimeoutMillis,
+                     InputLimits limits) {
+        this.portNumber = portNumber;
+        this.eventLoops = new EventLoop[loopCount];
+        this.journal = journal;
+        this.readyTimeoutMillis = readyTimeoutMillis;
+        this.limits = limits;
+    }
+
+    /**
+     * Starts the event loops and the lobby, then accepts connections on the calling thread. Every connection goes
+     * straight to the lobby, which pairs players as they get ready and hands each pair to the next event loop.
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(journal, null, limits);
+            startThread(eventLoops[i], "connect4-loop-" + i);
+        }
+        EventLoop lobby = new EventLoop(journal, new Lobby(eventLoops, readyTimeoutMillis), limits);
+        startThread(lobby, "connect4-lobby");
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber));
+            while (true) {
+                SocketChannel client = serverChannel.accept();
+                client.configureBlocking(false);
+                // every message is small and each event's are already written together, Nagle would only hold
+                // them back until the player's delayed ACK
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                lobby.register(client);
+            }
+        }
+    }
+
+    private static void startThread(EventLoop loop, String name) {
+        Thread loopThread = new Thread(loop, name);
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    /**
+     * Whatever a connection belongs to right now: the lobby until it's paired, then its match. The event loop passes
+     * everything that happens to the connection on to it.
+     */
+    interface Stage {
+
+        /**
+         * New commands have been added to the connection's queue.
+         */
+        void commandsReady(Connection connection);
+
+        /**
+         * The connection has closed or failed.
+         */
+        void disconnected(Connection connection);
+
+        /**
+         * The player broke one of the InputLimits and has to go.
+         *
+         * @param reason - what they did, for people
+         */
+        void kick(Connection connection, String reason);
+
+        /**
+         * The connection's deadline has passed.
+         */
+        void timedOut(Connection connection);
+    }
+
+    /**
+     * Welcomes new connections and pairs players in the order they get ready. It runs on an event loop of its own,
+     * so the one player waiting for an opponent is only ever touched by that loop's thread, and nothing here needs
+     * locking either. Pairing hands both connections over to a game event loop, after which the lobby never looks
+     * at them again.
+     */
+    static class Lobby implements Stage {
+
+        private final EventLoop[] gameLoops;
+        private final long readyTimeoutNanos;
+        private final ServerMetrics metrics = ServerMetrics.get();
+        // the ready player waiting for an opponent, every match is on the standard board so there's only ever one
+        private Connection waiting;
+        private int nextLoop;
+
+        Lobby(EventLoop[] gameLoops, long readyTimeoutMillis) {
+            this.gameLoops = gameLoops;
+            this.readyTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readyTimeoutMillis);
+        }
+
+        /**
+         * A new connection has until its ready timeout to send R, counted from when its protocol is decided.
+         */
+        void joined(Connection connection) {
+            connection.stage = this;
+            connection.deadline = connection.detectDeadline + readyTimeoutNanos;
+        }
+
+        @Override
+        public void commandsReady(Connection connection) {
+            if (connection == waiting) {
+                return; // anything sent while waiting is kept for the match, like moves typed ahead
+            }
+            Integer command;
+            while ((command = connection.commands.poll()) != null) {
+                if (command == WireProtocol.READY) {
+                    metrics.validInput();
+                    connection.rateLimiter.refund();
+                    connection.deadline = 0;
+                    ready(connection);
+                    return;
+                }
+                metrics.invalidInput();
+                connection.protocol.readyPrompt(true);
+            }
+        }
+
+        private void ready(Connection connection) {
+            if (waiting == null) {
+                waiting = connection;
+                metrics.playerWaiting();
+                connection.protocol.waitingForOpponent();
+                return;
+            }
+            Connection opponent = waiting;
+            waiting = null;
+            metrics.playersStoppedWaiting(1);
+            // the player who has been waiting the longest is player 1 and gets first move, like the blocking server
+            opponent.handOff();
+            connection.handOff();
+            opponent.key.cancel();
+            connection.key.cancel();
+            gameLoops[nextLoop].handOver(opponent, connection);
+            nextLoop = (nextLoop + 1) % gameLoops.length;
+        }
+
+        @Override
+        public void disconnected(Connection connection) {
+            if (connection == waiting) {
+                waiting = null;
+                metrics.playersStoppedWaiting(1);
+            }
+            connection.closeNow();
+        }
+
+        @Override
+        public void kick(Connection connection, String reason) {
+            if (connection.protocol != null) {
+                connection.protocol.kicked(reason);
+            }
+            disconnected(connection);
+        }
+
+        @Override
+        public void timedOut(Connection connection) {
+            metrics.readyTimedOut();
+            kick(connection, "You took too long to get ready");
+        }
+    }
+
+    /**
+     * One selector thread that owns a share of the matches, or the lobby's connections.
+     */
+    static class EventLoop implements Runnable {
+
+        // how often every connection is checked for running out of time
+        private static final long DEADLINE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final Selector selector;
+        private final Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection[]> newPairs = new ConcurrentLinkedQueue<>();
+        // connections that haven't sent anything yet, so we don't know which protocol they speak
+        private final List<Connection> undetected = new ArrayList<>();
+        // connections that have been sent something since the loop last wrote to the sockets
+        private final List<Connection> unwritten = new ArrayList<>();
+        private final GameJournal journal;
+        // null for the loops that run matches
+        private final Lobby lobby;
+        private final InputLimits limits;
+        private long nextDeadlineCheck = System.nanoTime() + DEADLINE_CHECK_NANOS;
+
+        EventLoop(GameJournal journal, Lobby lobby, InputLimits limits) throws IOException {
+            selector = Selector.open();
+            this.journal = journal;
+            this.lobby = lobby;
+            this.limits = limits;
+        }
+
+        /**
+         * Called from the accepting thread on the lobby's loop, the connection is registered on the loop thread
+         * itself on its next wakeup.
+         */
+        void register(SocketChannel client) {
+            newConnections.add(client);
+            selector.wakeup();
+        }
+
+        /**
+         * Called from the lobby's thread once two players are ready. Their keys on the lobby's selector have been
+         * cancelled, from here on only this loop's thread touches them.
+         *
+         * @param playerOne - the player who was waiting, they move first
+         * @param playerTwo - the player who just got ready
+         */
+        void handOver(Connection playerOne, Connection playerTwo) {
+            newPairs.add(new Connection[]{playerOne, playerTwo});
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    long wakeAt = nextDeadlineCheck;
+                    if (!undetected.isEmpty() && undetected.get(0).detectDeadline - wakeAt < 0) {
+                        wakeAt = undetected.get(0).detectDeadline;
+                    }
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeAt - System.nanoTime())));
+                    registerNewConnections();
+                    registerNewPairs();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (InputRejectedException e) {
+                            connection.stage.kick(connection, e.getMessage());
+                        } catch (IOException e) {
+                            connection.stage.disconnected(connection);
+                        } catch (RuntimeException e) {
+                            // a bug in one match mustn't take down the thread every other match on this loop runs on
+                            Log.error("Exception caught handling a connection, ending its match", e);
+                            connection.stage.disconnected(connection);
+                        }
+                    }
+                    defaultToText();
+                    if (System.nanoTime() - nextDeadlineCheck >= 0) {
+                        checkDeadlines();
+                        nextDeadlineCheck = System.nanoTime() + DEADLINE_CHECK_NANOS;
+                    }
+                    writeOut();
+                } catch (IOException | RuntimeException e) {
+                    Log.error("Exception caught in event loop", e);
+                }
+            }
+        }
+
+        /**
+         * Writes everything each connection was sent while handling this round of events in one go, so a move, the
+         * board and whose turn it is go out as one packet rather than three.
+         */
+        private void writeOut() {
+            for (Connection connection : unwritten) {
+                connection.writeOut();
+            }
+            unwritten.clear();
+        }
+
+        private void registerNewConnections() throws IOException {
+            SocketChannel channel;
+            while ((channel = newConnections.poll()) != null) {
+                Connection connection = new Connection(channel, this, limits);
+                lobby.joined(connection);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                undetected.add(connection);
+            }
+        }
+
+        private void registerNewPairs() throws IOException {
+            Connection[] pair;
+            while ((pair = newPairs.poll()) != null) {
+                for (Connection player : pair) {
+                    player.loop = this;
+                    // output the lobby couldn't write yet carries on being written from here
+                    int interest = player.pendingWrites.isEmpty() ? SelectionKey.OP_READ
+                            : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+                    player.key = player.channel.register(selector, interest, player);
+                }
+                new Match(pair[0], pair[1], journal).start();
+            }
+        }
+
+        /**
+         * A client that hasn't sent its first byte by the deadline is an nc user waiting to be welcomed, so it gets
+         * the text protocol. Connections are added in deadline order, so only the front of the list needs checking.
+         */
+        private void defaultToText() {
+            long now = System.nanoTime();
+            Iterator<Connection> connections = undetected.iterator();
+            while (connections.hasNext()) {
+                Connection connection = connections.next();
+                if (connection.protocol != null || connection.closed) {
+                    connections.remove();
+                } else if (now - connection.detectDeadline >= 0) {
+                    connections.remove();
+                    connection.detected(new TextProtocol(connection, limits.getMaxLineLength()));
+                } else {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Disconnects anyone who has run out of time to get ready or to move. Only a second's worth of precision is
+         * needed, so rather than keeping the deadlines in order every connection is looked at once a second.
+         */
+        private void checkDeadlines() {
+            long now = System.nanoTime();
+            // a connection closed or handed over here is only taken out of the key set by the next select
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (key.isValid() && connection.deadline != 0 && now - connection.deadline >= 0) {
+                    connection.stage.timedOut(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single player's channel, with the protocol it speaks, the commands it has sent that the match hasn't used
+     * yet and any output the socket couldn't take straight away.
+     */
+    static class Connection {
+
+        // how long a new connection has to send BinaryProtocol.MAGIC before it's treated as a text client
+        private static final long DETECT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(512);
+        // what the connection has been sent since its loop last wrote to the socket
+        private ByteBuffer outgoing = ByteBuffer.allocate(1024);
+        // output the socket didn't have room for yet
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        // commands sent while it's not this player's turn are kept until they are, the same as the blocking server
+        private final Queue<Integer> commands = new ArrayDeque<>();
+        private final BoardRenderer renderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+        private final long detectDeadline = System.nanoTime() + DETECT_NANOS;
+        private final InputLimits limits;
+        private final InputLimits.RateLimiter rateLimiter;
+        // when the player has to be ready or have moved by, 0 while the match isn't waiting on them
+        private long deadline;
+        private WireProtocol protocol;
+        private SelectionKey key;
+        private Stage stage;
+        // the loop that owns the connection, the lobby's until the player is paired
+        private EventLoop loop;
+        private boolean closing, closed;
+
+        Connection(SocketChannel channel, EventLoop loop, InputLimits limits) {
+            this.channel = channel;
+            this.loop = loop;
+            this.limits = limits;
+            this.rateLimiter = limits.newRateLimiter();
+            ServerMetrics.get().socketOpened();
+        }
+
+        /**
+         * Reads whatever has arrived and passes any complete commands to the lobby or the match. The very first byte
+         * decides the protocol.
+         *
+         * @throws InputRejectedException if the player broke one of the InputLimits
+         */
+        void read() throws IOException {
+            int bytesRead = channel.read(readBuffer);
+            if (bytesRead == -1) {
+                stage.disconnected(this);
+                return;
+            }
+            readBuffer.flip();
+            if (protocol == null) {
+                if (!readBuffer.hasRemaining()) {
+                    // woken up with nothing to read, the protocol is still decided by the first byte
+                    readBuffer.clear();
+                    return;
+                }
+                if (readBuffer.get(0) == BinaryProtocol.MAGIC) {
+                    readBuffer.get();
+                    detected(new BinaryProtocol(this));
+                } else {
+                    detected(new TextProtocol(this, limits.getMaxLineLength()));
+                }
+            }
+            int queued = commands.size();
+            protocol.read(readBuffer, commands);
+            readBuffer.clear();
+            for (int command = queued; command < commands.size(); command++) {
+                if (!rateLimiter.tryAcquire()) {
+                    ServerMetrics.get().inputRateLimited();
+                    throw new InputRejectedException("You're sending too much too fast");
+                }
+            }
+            // the last thing done here, since being paired hands the connection over to another thread
+            stage.commandsReady(this);
+        }
+
+        void detected(WireProtocol protocol) {
+            this.protocol = protocol;
+            protocol.welcome();
+        }
+
+        void println(String text) {
+            send((text + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Adds to what the connection is sent once the loop has finished handling this round of events. bytes may
+         * be a reused frame, so it's copied straight away.
+         */
+        void send(byte[] bytes) {
+            if (closed) {
+                return;
+            }
+            if (outgoing.position() == 0) {
+                loop.unwritten.add(this);
+            }
+            if (outgoing.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(outgoing.capacity() * 2,
+                        outgoing.position() + bytes.length));
+                outgoing.flip();
+                outgoing = bigger.put(outgoing);
+            }
+            outgoing.put(bytes);
+        }
+
+        /**
+         * Writes everything sent since last time in one write, queueing whatever the socket has no room for.
+         */
+        void writeOut() {
+            if (closed || outgoing.position() == 0) {
+                return;
+            }
+            outgoing.flip();
+            try {
+                if (pendingWrites.isEmpty()) {
+                    channel.write(outgoing);
+                }
+                if (outgoing.hasRemaining()) {
+                    pendingWrites.add(ByteBuffer.allocate(outgoing.remaining()).put(outgoing).flip());
+                }
+                outgoing.clear();
+                flush();
+            } catch (IOException e) {
+                closeNow();
+            }
+        }
+
+        /**
+         * Called by the lobby before the connection goes to another loop, so nothing it was sent is left behind on
+         * this one.
+         */
+        void handOff() {
+            writeOut();
+            loop.unwritten.remove(this);
+        }
+
+        /**
+         * Sends the board as one frame drawn in this connection's own reusable buffer.
+         */
+        void sendBoard(BitBoard board) {
+            send(renderer.render(board));
+        }
+
+        /**
+         * Writes as much queued output as the socket accepts, and only asks the selector for OP_WRITE while
+         * something is still left over.
+         */
+        void flush() throws IOException {
+            ByteBuffer head;
+            while ((head = pendingWrites.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingWrites.poll();
+            }
+            if (closing && outgoing.position() == 0) {
+                closeNow();
+            } else if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Closes the connection once the last messages (like who won) have been written out.
+         */
+        void close() {
+            closing = true;
+            if (pendingWrites.isEmpty() && outgoing.position() == 0) {
+                closeNow();
+            }
+        }
+
+        /**
+         * Closes the connection straight away. Whatever it was sent since the last round of writes (like why it's
+         * being kicked) gets one write that doesn't wait, if there's room for it.
+         */
+        void closeNow() {
+            if (!closed) {
+                ServerMetrics.get().socketClosed();
+                if (pendingWrites.isEmpty() && outgoing.position() > 0) {
+                    try {
+                        channel.write(outgoing.flip());
+                    } catch (IOException e) {
+                        // the connection is going anyway
+                    }
+                }
+            }
+            closed = true;
+            outgoing.clear();
+            pendingWrites.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * The game between two connections. This follows ConnectionThread.run() step by step, but because nothing can
+     * block, it's driven by commands arriving instead of by a loop. It only deals in game events, each player's
+     * WireProtocol decides how they're sent.
+     */
+    static class Match implements Stage {
+
+        private static final int PLAYING = 0, FINISHED = 1;
+
+        private final BitBoard board = new BitBoard();
+        private final Connection[] players;
+        private int state = PLAYING;
+        private int turn;
+        private long startedAt;
+        private final ServerMetrics metrics = ServerMetrics.get();
+        private final GameJournal journal;
+        private long matchId;
+
+        /**
+         * @param one - player 1, who moves first
+         * @param two - player 2
+         */
+        Match(Connection one, Connection two, GameJournal journal) {
+            this.journal = journal;
+            players = new Connection[]{one, two};
+            one.stage = this;
+            two.stage = this;
+        }
+
+        /**
+         * Both players are ready, so the game starts straight away. Anything player 1 typed ahead is played now.
+         */
+        void start() {
+            startedAt = System.nanoTime();
+            metrics.matchStarted();
+            matchId = journal.matchStarted(GameRecord.HUMAN, BoardGeometry.STANDARD);
+            board.reset();
+            players[0].protocol.gameStarted(board, 0);
+            players[1].protocol.gameStarted(board, 1);
+            startTurn();
+            commandsReady(players[turn]);
+        }
+
+        /**
+         * Plays every move the player whose turn it is has sent. The other player's commands wait for their turn.
+         */
+        @Override
+        public void commandsReady(Connection connection) {
+            Integer command;
+            while (state == PLAYING && (command = players[turn].commands.poll()) != null) {
+                playTurn(command);
+            }
+        }
+
+        /**
+         * Starts the clock on the next player's turn and tells both players whose turn it is.
+         */
+        private void startTurn() {
+            players[1 - turn].deadline = 0;
+            players[turn].deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(players[turn].limits.getTurnTimeoutMillis());
+            promptTurn();
+        }
+
+        private void promptTurn() {
+            players[turn].protocol.yourTurn(turn);
+            players[1 - turn].protocol.waitingFor(turn);
+        }
+
+        private void playTurn(int command) {
+            long moveStartedAt = System.nanoTime();
+            WireProtocol mover = players[turn].protocol;
+            WireProtocol opponent = players[1 - turn].protocol;
+            // commands 1 to 7 are the columns, READY and OTHER are both negative
+            int column = command - 1;
+            if (column < 0 || column >= BitBoard.COLUMNS) {
+                metrics.invalidInput();
+                mover.invalidColumn();
+                promptTurn();
+                return;
+            }
+            players[turn].rateLimiter.refund();
+            int row = board.play(column, turn);
+            journal.movePlayed(matchId, column, turn);
+            if (row != -1) {
+                mover.moved(board, row, column, turn, true);
+                opponent.moved(board, row, column, turn, false);
+            } else {
+                mover.columnFull(board, true);
+                opponent.columnFull(board, false);
+            }
+            turn = 1 - turn;
+
+            long winCheckStartedAt = System.nanoTime();
+            int result = GameRecord.outcome(board);
+            metrics.winChecked(winCheckStartedAt);
+            if (result == GameRecord.PLAYER_ONE_WON || result == GameRecord.PLAYER_TWO_WON) {
+                int winner = result == GameRecord.PLAYER_ONE_WON ? 0 : 1;
+                players[winner].protocol.won();
+                players[1 - winner].protocol.lost();
+                journal.matchEnded(matchId, result);
+                finish();
+            } else if (result == GameRecord.DRAW) {
+                players[0].protocol.draw();
+                players[1].protocol.draw();
+                journal.matchEnded(matchId, GameRecord.DRAW);
+                finish();
+            } else {
+                startTurn();
+            }
+            metrics.movePlayed(moveStartedAt);
+        }
+
+        private void finish() {
+            metrics.matchFinished(startedAt);
+            state = FINISHED;
+            for (Connection player : players) {
+                player.close();
+            }
+        }
+
+        /**
+         * The match has been waiting on a player for too long to move.
+         */
+        @Override
+        public void timedOut(Connection connection) {
+            if (state == PLAYING) {
+                metrics.turnTimedOut();
+                kick(connection, "You took too long to move");
+            }
+        }
+
+        /**
+         * Tells a player why they're being disconnected, then ends the match the same as if they'd left. Whatever
+         * of the reason doesn't fit in the socket's buffer is dropped, someone who isn't reading doesn't get to keep
+         * the connection open.
+         */
+        @Override
+        public void kick(Connection connection, String reason) {
+            if (state == FINISHED) {
+                return;
+            }
+            connection.protocol.kicked(reason);
+            disconnected(connection);
+        }
+
+        /**
+         * If either player leaves, the match can't continue so the opponent is told and disconnected too.
+         */
+        @Override
+        public void disconnected(Connection connection) {
+            if (state == FINISHED) {
+                return;
+            }
+            metrics.matchFinished(startedAt);
+            journal.matchEnded(matchId, GameRecord.ABANDONED);
+            state = FINISHED;
+            for (Connection player : players) {
+                if (player != connection) {
+                    player.protocol.opponentLeft();
+                    player.close();
+                } else {
+                    player.closeNow();
+                }
+            }
+        }
+    }
+}
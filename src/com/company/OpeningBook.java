@@ -0,0 +1,229 @@
+package com.company;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The computer's best move for every early position, worked out ahead of time so the opening moves are instant
+ * instead of each taking the full thinking time. Every opening position is searched the same way anyway (the
+ * board is empty or nearly, so nothing else tells the searches apart), so doing it once for every match saves the
+ * most time where the search is slowest.
+ *
+ * The book is a file that's memory mapped, never read into the heap, so every solver in the process shares the
+ * one copy the OS keeps in its page cache. Positions are stored under Solver.canonicalKey(), so a position and its
+ * mirror image take one entry between them.
+ * <pre>
+ *   int     MAGIC, then VERSION
+ *   int     entry count
+ *   long[]  canonical keys, sorted so they can be binary searched
+ *   bytes   per entry: best column from 0 for the canonical position, score + 128, depth searched
+ * </pre>
+ * That's 11 bytes a position. Build one with:
+ * java com.company.OpeningBook --plies=4 --think-ms=2000 opening.book
+ */
+public class OpeningBook {
+
+    private static final int MAGIC = 0x4334424B; // "C4BK"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int ENTRY_BYTES = 3;
+
+    private final MappedByteBuffer book;
+    private final int entries;
+    private final int entriesAt;
+    private final LongAdder hits = new LongAdder();
+
+    private OpeningBook(MappedByteBuffer book) throws IOException {
+        if (book.limit() < HEADER_BYTES || book.getInt(0) != MAGIC || book.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book");
+        }
+        this.book = book;
+        this.entries = book.getInt(8);
+        this.entriesAt = HEADER_BYTES + entries * Long.BYTES;
+        if (book.limit() != entriesAt + (long) entries * ENTRY_BYTES) {
+            throw new IOException("Opening book is the wrong size for " + entries + " positions");
+        }
+    }
+
+    /**
+     * Maps a book file into memory. The file stays mapped until the process exits.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Looks a position up. Only absolute reads are made on the mapped buffer, so any number of threads can look
+     * positions up at once.
+     *
+     * @param canonicalKey - from Solver.canonicalKey()
+     * @return the entry to be read with column(), score() and depth(), or -1 if the position isn't in the book
+     */
+    public int find(long canonicalKey) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long key = book.getLong(HEADER_BYTES + middle * Long.BYTES);
+            if (key < canonicalKey) {
+                low = middle + 1;
+            } else if (key > canonicalKey) {
+                high = middle - 1;
+            } else {
+                int at = entriesAt + middle * ENTRY_BYTES;
+                hits.increment();
+                return (book.get(at) & 0xFF) << 16 | (book.get(at + 1) & 0xFF) << 8 | (book.get(at + 2) & 0xFF);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the best column from 0, for the canonical position
+     */
+    public static int column(int entry) {
+        return entry >>> 16;
+    }
+
+    public static int score(int entry) {
+        return (entry >>> 8 & 0xFF) - 128;
+    }
+
+    public static int depth(int entry) {
+        return entry & 0xFF;
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * @return lookups that found their position
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Builds a book by searching every position up to a number of moves in.
+     *
+     * Usage: OpeningBook [--plies=4] [--think-ms=2000] [--depth=42] <file>
+     * --plies     positions with up to this many discs on the board go in the book
+     * --think-ms  how long each position is searched for, the longer the better the moves
+     * --depth     the deepest the search goes, 42 searches to the end of the game if there's time
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        Path file = null;
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                file = Paths.get(arg);
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: OpeningBook [--plies=4] [--think-ms=2000] [--depth=42] <file>");
+            System.exit(2);
+        }
+        int plies = Integer.parseInt(options.getOrDefault("plies", "4"));
+        Solver solver = new Solver(new TranspositionTable(22), ForkJoinPool.commonPool(),
+                Integer.parseInt(options.getOrDefault("depth", String.valueOf(BitBoard.ROWS * BitBoard.COLUMNS))),
+                Long.parseLong(options.getOrDefault("think-ms", "2000")));
+
+        Map<Long, BitBoard> positions = new HashMap<>();
+        collect(new BitBoard(), "", plies, positions, new HashSet<>());
+        System.out.println(positions.size() + " positions to search");
+        long[] keys = positions.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        byte[] entries = new byte[keys.length * ENTRY_BYTES];
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            BitBoard board = positions.get(keys[i]);
+            int column = solver.bestMove(board, board.getMovesPlayed() % 2);
+            entries[i * ENTRY_BYTES] = (byte) column;
+            entries[i * ENTRY_BYTES + 1] = (byte) (solver.getLastScore() + 128);
+            entries[i * ENTRY_BYTES + 2] = (byte) solver.getLastDepth();
+            System.out.printf("%d/%d searched, %.0fs%n", i + 1, keys.length, (System.nanoTime() - startedAt) / 1e9);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+            out.write(entries);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Wrote " + keys.length + " positions to " + file);
+    }
+
+    /**
+     * Finds every position reachable in a number of moves that the game isn't already over in, keeping whichever of
+     * a position and its mirror image has the canonical key, so the best column found is for the canonical position.
+     */
+    private static void collect(BitBoard board, String moves, int plies, Map<Long, BitBoard> positions,
+                                Set<Long> seen) {
+        long key = Solver.positionKey(board);
+        if (!seen.add(key)) {
+            return; // reached already by playing the same moves in another order
+        }
+        long canonical = Solver.canonicalKey(key);
+        if (canonical == key) {
+            positions.putIfAbsent(canonical, board);
+        } else if (!positions.containsKey(canonical)) {
+            positions.put(canonical, mirrored(moves));
+        }
+        if (moves.length() == plies) {
+            return;
+        }
+        for (int column = 0; column < BitBoard.COLUMNS; column++) {
+            if (!board.canPlay(column)) {
+                continue;
+            }
+            BitBoard next = replay(moves + column);
+            if (!next.hasWon(moves.length() % 2)) {
+                collect(next, moves + column, plies, positions, seen);
+            }
+        }
+    }
+
+    private static BitBoard replay(String moves) {
+        BitBoard board = new BitBoard();
+        for (int i = 0; i < moves.length(); i++) {
+            board.play(moves.charAt(i) - '0', i % 2);
+        }
+        return board;
+    }
+
+    private static BitBoard mirrored(String moves) {
+        char[] columns = moves.toCharArray();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = (char) ('0' + BitBoard.COLUMNS - 1 - (columns[i] - '0'));
+        }
+        return replay(new String(columns));
+    }
+
+    @Override
+    public String toString() {
+        return entries + " positions";
+    }
+}
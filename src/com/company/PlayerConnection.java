@@ -0,0 +1,200 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connected player's socket together with the reader and writer used to talk to them. It's created as soon as the
+ * socket is accepted so the Matchmaker can run the ready check before the player is paired, and the same reader and
+ * writer are then handed on to their ConnectionThread.
+ */
+public class PlayerConnection implements Closeable {
+
+    private final Socket socket;
+    private final BufferedReader input;
+    private final PrintWriter output;
+    private final OutputStream rawOutput;
+    private final BoardRenderer renderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+    private final long connectedAt = System.nanoTime();
+    private long readyAt;
+    // the board they asked for when they typed R
+    private BoardGeometry geometry = BoardGeometry.STANDARD;
+    // the Matchmaker and the match can both close a player, the connected socket count should only drop once
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final InputLimits limits;
+    private final InputLimits.RateLimiter rateLimiter;
+    // the line being read, kept between calls so a read that times out half way through a line loses nothing
+    private final char[] line;
+    private int lineLength;
+
+    /**
+     * @param socket - the accepted socket
+     * @param limits - how much the player can send, see readLine()
+     */
+    public PlayerConnection(Socket socket, InputLimits limits) throws IOException {
+        this.socket = socket;
+        this.limits = limits;
+        this.rateLimiter = limits.newRateLimiter();
+        this.line = new char[limits.getMaxLineLength()];
+        ServerMetrics.get().socketOpened();
+        this.input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.rawOutput = socket.getOutputStream();
+        this.output = new PrintWriter(rawOutput, true);
+    }
+
+    /**
+     * Reads the next line the player sent, like BufferedReader.readLine() but into a fixed size buffer, so a line
+     * with no end can't grow without limit. If the socket has a timeout and it runs out, whatever was read of the
+     * line so far is kept for the next call.
+     *
+     * @return the line without its line ending, or null at the end of the stream
+     * @throws InputRejectedException if the line is too long or the player is sending lines too fast
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            int c = input.read();
+            if (c == -1) {
+                return lineLength == 0 ? null : takeLine();
+            }
+            if (c == '\n') {
+                if (!rateLimiter.tryAcquire()) {
+                    ServerMetrics.get().inputRateLimited();
+                    throw new InputRejectedException("You're sending too much too fast");
+                }
+                return takeLine();
+            }
+            if (c == '\r') {
+                continue;
+            }
+            if (lineLength == line.length) {
+                ServerMetrics.get().lineTooLong();
+                throw new InputRejectedException("That's too long, nothing you need to type is over "
+                        + line.length + " characters");
+            }
+            line[lineLength++] = (char) c;
+        }
+    }
+
+    /**
+     * The last line was a move on the player's turn or got them ready, so it doesn't count against the rate limit.
+     */
+    public void inputAccepted() {
+        rateLimiter.refund();
+    }
+
+    private String takeLine() {
+        String text = new String(line, 0, lineLength);
+        lineLength = 0;
+        return text;
+    }
+
+    public InputLimits getLimits() {
+        return limits;
+    }
+
+    public PrintWriter getOutput() {
+        return output;
+    }
+
+    /**
+     * Draws the board with this player's renderer and sends the whole frame in one write.
+     *
+     * @param board - the board to send
+     * @return the frame that was sent, so it can be mirrored somewhere else before the next render
+     */
+    public byte[] sendBoard(BitBoard board) {
+        byte[] frame = renderer.render(board);
+        // anything printed with print() instead of println() is still sitting in the writer's buffer
+        output.flush();
+        try {
+            rawOutput.write(frame);
+        } catch (IOException e) {
+            // the same as PrintWriter, a broken connection shows up when the next line is read
+        }
+        return frame;
+    }
+
+    /**
+     * Writes bytes that are already encoded, like a spectator update. Unlike the PrintWriter, a broken connection
+     * shows up straight away as an exception.
+     */
+    public void write(byte[] bytes) throws IOException {
+        rawOutput.write(bytes);
+        rawOutput.flush();
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getReadyAt() {
+        return readyAt;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    void markReady(BoardGeometry geometry) {
+        readyAt = System.nanoTime();
+        this.geometry = geometry;
+    }
+
+    /**
+     * Checks whether the player has gone away without reading anything they typed. If there's nothing to read, a
+     * 1 millisecond read tells apart a quiet player (the read times out) from a closed socket (end of stream). Only
+     * call this while no other thread is reading from the player.
+     *
+     * @return true if the socket has been closed or reset
+     */
+    public boolean isDropped() {
+        if (socket.isClosed()) {
+            return true;
+        }
+        try {
+            if (input.ready()) {
+                return false;
+            }
+            socket.setSoTimeout(1);
+            input.mark(1);
+            if (input.read() == -1) {
+                return true;
+            }
+            input.reset();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            try {
+                socket.setSoTimeout(0);
+            } catch (IOException e) {
+                // socket already closed, isDropped() will say so next time
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            ServerMetrics.get().socketClosed();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to clean up
+        }
+    }
+}
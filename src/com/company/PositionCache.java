@@ -0,0 +1,173 @@
+package com.company;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The computer's finished answers for positions it has already been asked about, so a position that comes up in
+ * several matches (most of them, early on) is only searched once, by the first match to reach it. Unlike the
+ * TranspositionTable, which caches every node inside a search, this only holds whole answers: the column to play,
+ * its score and how deep the search got.
+ *
+ * Positions are stored under Solver.canonicalKey() with the search depth limit, so the same position at two
+ * difficulties is two entries, while a position and its mirror image share one.
+ *
+ * The cache is split into segments, each a small LRU list with its own lock, so matches looking positions up at
+ * the same time rarely wait on each other. Eviction is LRU with a second chance for positions that keep coming up:
+ * every hit adds to an entry's count, and when the least recently used entry still has hits counted, its count is
+ * halved and it goes back to the front instead of being evicted. So a common opening that goes quiet for a while
+ * survives a burst of one-off endgames, but a count earned long ago wears off.
+ */
+public class PositionCache {
+
+    private static final int SEGMENTS = 16;
+    // how many entries eviction looks at before it evicts the oldest one regardless
+    private static final int MAX_SECOND_CHANCES = 8;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int segmentCapacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity - the most positions kept, each takes around 100 bytes
+     */
+    public PositionCache(int capacity) {
+        this.segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static long cacheKey(long canonicalKey, int maxDepth) {
+        // canonical keys take the low 49 bits
+        return canonicalKey | (long) maxDepth << 56;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) ((key * 0x9E3779B97F4A7C15L) >>> 60)];
+    }
+
+    /**
+     * @param canonicalKey - from Solver.canonicalKey()
+     * @param maxDepth     - the depth limit of the solver asking
+     * @return the answer to be read with column(), score() and depth(), or -1 if the position isn't cached
+     */
+    public int get(long canonicalKey, int maxDepth) {
+        long key = cacheKey(canonicalKey, maxDepth);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry == null) {
+                misses.increment();
+                return -1;
+            }
+            entry.hits++;
+            hits.increment();
+            return entry.answer;
+        }
+    }
+
+    /**
+     * @param canonicalKey - from Solver.canonicalKey()
+     * @param maxDepth     - the depth limit of the solver that searched it
+     * @param column       - the best column for the canonical position, from 0
+     * @param score        - the column's score
+     * @param depth        - how deep the search got
+     */
+    public void put(long canonicalKey, int maxDepth, int column, int score, int depth) {
+        long key = cacheKey(canonicalKey, maxDepth);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                segment.put(key, entry);
+            }
+            entry.answer = column << 16 | (score + 128) << 8 | depth;
+            if (segment.size() > segmentCapacity) {
+                evictOne(segment);
+            }
+        }
+    }
+
+    private void evictOne(Segment segment) {
+        for (int chance = 0; chance < MAX_SECOND_CHANCES; chance++) {
+            Iterator<Map.Entry<Long, Entry>> oldest = segment.entrySet().iterator();
+            Map.Entry<Long, Entry> eldest = oldest.next();
+            Entry entry = eldest.getValue();
+            if (entry.hits == 0) {
+                oldest.remove();
+                evictions.increment();
+                return;
+            }
+            entry.hits /= 2;
+            // looking it up moves it to the front of an access ordered map
+            segment.get(eldest.getKey());
+        }
+        Iterator<Map.Entry<Long, Entry>> oldest = segment.entrySet().iterator();
+        oldest.next();
+        oldest.remove();
+        evictions.increment();
+    }
+
+    public static int column(int answer) {
+        return answer >>> 16;
+    }
+
+    public static int score(int answer) {
+        return (answer >>> 8 & 0xFF) - 128;
+    }
+
+    public static int depth(int answer) {
+        return answer & 0xFF;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "positions=" + size() + " hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions();
+    }
+
+    private static class Entry {
+        int answer;
+        // halved each time eviction gives the entry a second chance
+        int hits;
+    }
+
+    /**
+     * One segment's entries, least recently used first.
+     */
+    private static class Segment extends LinkedHashMap<Long, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms for every match on the server, shared by the blocking and NIO modes.
+ *
+ * Everything here is recorded from the match threads while they play, so it's all LongAdders and lock-free
+ * histograms: recording never blocks and threads recording at the same time don't slow each other down. Reading is
+ * left to whoever asks (the HTTP endpoint or JMX, see MetricsEndpoint), which is when the sums are added up.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final LongAdder connectedSockets = new LongAdder();
+    private final LongAdder activeMatches = new LongAdder();
+    private final LongAdder matchesStarted = new LongAdder();
+    private final LongAdder matchesFinished = new LongAdder();
+    private final LongAdder movesPlayed = new LongAdder();
+    private final LongAdder validInputs = new LongAdder();
+    private final LongAdder invalidInputs = new LongAdder();
+    private final LongAdder spectators = new LongAdder();
+    private final LongAdder spectatorsDropped = new LongAdder();
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder matchesAbandoned = new LongAdder();
+    private final LongAdder playersWaiting = new LongAdder();
+    private final LongAdder linesTooLong = new LongAdder();
+    private final LongAdder inputsRateLimited = new LongAdder();
+    private final LongAdder turnTimeouts = new LongAdder();
+    private final LongAdder readyTimeouts = new LongAdder();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram winCheckTime = new LatencyHistogram();
+    private final LatencyHistogram matchDuration = new LatencyHistogram();
+
+    // moves per second is worked out once a second by sample(), from the moves played since the last sample
+    private long lastSampleMoves;
+    private long lastSampleNanos = System.nanoTime();
+    private volatile double movesPerSecond;
+
+    public static ServerMetrics get() {
+        return INSTANCE;
+    }
+
+    public void socketOpened() {
+        connectedSockets.increment();
+    }
+
+    public void socketClosed() {
+        connectedSockets.decrement();
+    }
+
+    public void matchStarted() {
+        matchesStarted.increment();
+        activeMatches.increment();
+    }
+
+    /**
+     * @param startedAt - System.nanoTime() when the match started
+     */
+    public void matchFinished(long startedAt) {
+        activeMatches.decrement();
+        matchesFinished.increment();
+        matchDuration.record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * A column was played, whether or not it was full.
+     *
+     * @param startedAt - System.nanoTime() when the move arrived, everything until now counts as processing it
+     */
+    public void movePlayed(long startedAt) {
+        movesPlayed.increment();
+        validInputs.increment();
+        moveLatency.record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * @param startedAt - System.nanoTime() before the win check
+     */
+    public void winChecked(long startedAt) {
+        winCheckTime.record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Anything that wasn't R during the ready check or a column from 1 to 7 during a turn.
+     */
+    public void invalidInput() {
+        invalidInputs.increment();
+    }
+
+    /**
+     * A ready check answered with R, counted so the invalid input rate has something to be a fraction of.
+     */
+    public void validInput() {
+        validInputs.increment();
+    }
+
+    public void spectatorJoined() {
+        spectators.increment();
+    }
+
+    public void spectatorLeft() {
+        spectators.decrement();
+    }
+
+    /**
+     * A spectator was disconnected because they couldn't keep up.
+     */
+    public void spectatorDropped() {
+        spectatorsDropped.increment();
+    }
+
+    public void sessionOpened() {
+        sessions.increment();
+    }
+
+    public void sessionClosed() {
+        sessions.decrement();
+    }
+
+    /**
+     * A player whose connection dropped came back to their match.
+     */
+    public void playerReconnected() {
+        reconnects.increment();
+    }
+
+    /**
+     * A match ended because a player left and didn't come back in time.
+     */
+    public void matchAbandoned() {
+        matchesAbandoned.increment();
+    }
+
+    /**
+     * A player is ready and waiting to be paired.
+     */
+    public void playerWaiting() {
+        playersWaiting.increment();
+    }
+
+    /**
+     * @param players - how many waiting players were paired or gave up waiting
+     */
+    public void playersStoppedWaiting(int players) {
+        playersWaiting.add(-players);
+    }
+
+    /**
+     * A player was disconnected for sending a line longer than InputLimits allows.
+     */
+    public void lineTooLong() {
+        linesTooLong.increment();
+    }
+
+    /**
+     * A player was disconnected for sending lines faster than InputLimits allows.
+     */
+    public void inputRateLimited() {
+        inputsRateLimited.increment();
+    }
+
+    /**
+     * A player was disconnected for not moving before their turn ran out.
+     */
+    public void turnTimedOut() {
+        turnTimeouts.increment();
+    }
+
+    /**
+     * A player was disconnected for not getting ready in time.
+     */
+    public void readyTimedOut() {
+        readyTimeouts.increment();
+    }
+
+    /**
+     * Updates moves per second. Called once a second by MetricsEndpoint.
+     */
+    synchronized void sample() {
+        long now = System.nanoTime();
+        long moves = movesPlayed.sum();
+        movesPerSecond = (moves - lastSampleMoves) / ((now - lastSampleNanos) / 1e9);
+        lastSampleMoves = moves;
+        lastSampleNanos = now;
+    }
+
+    @Override
+    public long getConnectedSockets() {
+        return connectedSockets.sum();
+    }
+
+    @Override
+    public long getActiveMatches() {
+        return activeMatches.sum();
+    }
+
+    @Override
+    public long getMatchesStarted() {
+        return matchesStarted.sum();
+    }
+
+    @Override
+    public long getMatchesFinished() {
+        return matchesFinished.sum();
+    }
+
+    @Override
+    public long getMovesPlayed() {
+        return movesPlayed.sum();
+    }
+
+    @Override
+    public double getMovesPerSecond() {
+        return movesPerSecond;
+    }
+
+    @Override
+    public long getInvalidInputs() {
+        return invalidInputs.sum();
+    }
+
+    @Override
+    public double getInvalidInputRate() {
+        long invalid = invalidInputs.sum();
+        long total = invalid + validInputs.sum();
+        return total == 0 ? 0 : (double) invalid / total;
+    }
+
+    @Override
+    public long getSpectators() {
+        return spectators.sum();
+    }
+
+    @Override
+    public long getSpectatorsDropped() {
+        return spectatorsDropped.sum();
+    }
+
+    @Override
+    public long getSessions() {
+        return sessions.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getMatchesAbandoned() {
+        return matchesAbandoned.sum();
+    }
+
+    @Override
+    public long getPlayersWaiting() {
+        return playersWaiting.sum();
+    }
+
+    @Override
+    public long getLinesTooLong() {
+        return linesTooLong.sum();
+    }
+
+    @Override
+    public long getInputsRateLimited() {
+        return inputsRateLimited.sum();
+    }
+
+    @Override
+    public long getTurnTimeouts() {
+        return turnTimeouts.sum();
+    }
+
+    @Override
+    public long getReadyTimeouts() {
+        return readyTimeouts.sum();
+    }
+
+    @Override
+    public long getMoveLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(moveLatency.percentile(50));
+    }
+
+    @Override
+    public long getMoveLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(moveLatency.percentile(99));
+    }
+
+    @Override
+    public long getMoveLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(moveLatency.getMax());
+    }
+
+    @Override
+    public long getWinCheckP50Nanos() {
+        return winCheckTime.percentile(50);
+    }
+
+    @Override
+    public long getWinCheckP99Nanos() {
+        return winCheckTime.percentile(99);
+    }
+
+    @Override
+    public long getMatchDurationP50Millis() {
+        return TimeUnit.NANOSECONDS.toMillis(matchDuration.percentile(50));
+    }
+
+    @Override
+    public long getMatchDurationP99Millis() {
+        return TimeUnit.NANOSECONDS.toMillis(matchDuration.percentile(99));
+    }
+
+    @Override
+    public long getLogMessagesDropped() {
+        return Log.getDropped();
+    }
+
+    public LatencyHistogram getMoveLatency() {
+        return moveLatency;
+    }
+
+    public LatencyHistogram getWinCheckTime() {
+        return winCheckTime;
+    }
+
+    public LatencyHistogram getMatchDuration() {
+        return matchDuration;
+    }
+}
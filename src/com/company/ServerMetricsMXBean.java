@@ -0,0 +1,75 @@
+package com.company;
+
+/**
+ * The live server metrics as seen from JMX (jconsole, VisualVM), registered as com.company:type=ServerMetrics.
+ * Times are in microseconds unless the name says otherwise.
+ */
+public interface ServerMetricsMXBean {
+
+    long getConnectedSockets();
+
+    long getActiveMatches();
+
+    long getMatchesStarted();
+
+    long getMatchesFinished();
+
+    long getMovesPlayed();
+
+    double getMovesPerSecond();
+
+    long getInvalidInputs();
+
+    /**
+     * @return invalid inputs as a fraction of everything players have sent during matches and ready checks
+     */
+    double getInvalidInputRate();
+
+    long getSpectators();
+
+    long getSpectatorsDropped();
+
+    /**
+     * @return players in a match who can reconnect to it with their session token
+     */
+    long getSessions();
+
+    long getReconnects();
+
+    long getMatchesAbandoned();
+
+    /**
+     * @return players waiting for an opponent, which the shard router sends the next player to
+     */
+    long getPlayersWaiting();
+
+    /**
+     * @return players disconnected for sending a line longer than the limit, see InputLimits
+     */
+    long getLinesTooLong();
+
+    /**
+     * @return players disconnected for sending lines faster than the limit, see InputLimits
+     */
+    long getInputsRateLimited();
+
+    long getTurnTimeouts();
+
+    long getReadyTimeouts();
+
+    long getMoveLatencyP50Micros();
+
+    long getMoveLatencyP99Micros();
+
+    long getMoveLatencyMaxMicros();
+
+    long getWinCheckP50Nanos();
+
+    long getWinCheckP99Nanos();
+
+    long getMatchDurationP50Millis();
+
+    long getMatchDurationP99Millis();
+
+    long getLogMessagesDropped();
+}
@@ -0,0 +1,222 @@
+package com.company;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session tokens for players in a match, so a player whose connection drops can come back to the same match
+ * instead of being paired again. Every player in a match gets a random token when it starts. Connecting again and
+ * typing T and the token in the ready check hands the new connection to their session, and the match picks it up.
+ *
+ * The match thread never waits on a reconnecting player's handshake: the token is read by whichever thread runs the
+ * new connection's ready check, and all that reaches the match is the finished connection. Sessions only live as
+ * long as their match, so a network flap never leaves anything behind once the match is over.
+ */
+public class SessionRegistry {
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final ServerMetrics metrics = ServerMetrics.get();
+    // where players reconnect to, when it isn't wherever they connected the first time
+    private volatile String address;
+
+    /**
+     * Tokens only work on the server that gave them out, so behind the shard router players have to reconnect to
+     * this server directly rather than to the router.
+     *
+     * @param address - host:port players can reach this server on
+     */
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    /**
+     * @return where players reconnect to, or null for the address they're already connected to
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return a new random token, never 0 and never one that's already in use
+     */
+    public long newToken() {
+        while (true) {
+            long token = random.nextLong();
+            if (token != 0 && !sessions.containsKey(token)) {
+                return token;
+            }
+        }
+    }
+
+    /**
+     * Starts accepting the token for a seat in a match.
+     *
+     * @param token   - from newToken(), or the journal for a recovered match
+     * @param matchId - the match the token is for
+     * @param seat    - 0 for player 1, 1 for player 2
+     */
+    public Session open(long token, long matchId, int seat) {
+        Session session = new Session(token, matchId, seat);
+        sessions.put(token, session);
+        metrics.sessionOpened();
+        return session;
+    }
+
+    /**
+     * @return the session with the token, or null if there isn't one
+     */
+    public Session find(long token) {
+        return sessions.get(token);
+    }
+
+    /**
+     * Stops accepting the session's token. A player who came back just too late is told the match is over.
+     */
+    public void close(Session session) {
+        if (session != null && sessions.remove(session.token, session)) {
+            metrics.sessionClosed();
+            session.close();
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the token the way players type it, 16 hex digits
+     */
+    public static String format(long token) {
+        return String.format("%016x", token);
+    }
+
+    /**
+     * @return the token typed by a player, or 0 if it isn't one
+     */
+    public static long parse(String token) {
+        try {
+            return Long.parseUnsignedLong(token.trim(), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One player's seat in a match. The match tells it which connection the player is using, and a player coming
+     * back leaves their new connection here until the match takes it.
+     */
+    public static class Session {
+
+        private final long token;
+        private final long matchId;
+        private final int seat;
+        // all guarded by this
+        private PlayerConnection current;
+        private PlayerConnection returning;
+        private boolean closed;
+
+        private Session(long token, long matchId, int seat) {
+            this.token = token;
+            this.matchId = matchId;
+            this.seat = seat;
+        }
+
+        public long getToken() {
+            return token;
+        }
+
+        public long getMatchId() {
+            return matchId;
+        }
+
+        public int getSeat() {
+            return seat;
+        }
+
+        /**
+         * Called by the match whenever the player's connection changes.
+         */
+        public synchronized void setCurrent(PlayerConnection connection) {
+            current = connection;
+        }
+
+        /**
+         * Hands a player's new connection to their match. The old connection is closed, which wakes the match up if
+         * it was still waiting to read from it, so a connection that died without the server noticing doesn't hold
+         * the match up either.
+         *
+         * @return false if the match is already over
+         */
+        public boolean reattach(PlayerConnection connection) {
+            PlayerConnection replaced;
+            PlayerConnection old;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                replaced = returning;
+                returning = connection;
+                old = current;
+                notifyAll();
+            }
+            if (replaced != null) {
+                replaced.close();
+            }
+            if (old != null) {
+                old.close();
+            }
+            return true;
+        }
+
+        /**
+         * @return the player's new connection if they've come back, without waiting
+         */
+        public synchronized PlayerConnection poll() {
+            PlayerConnection connection = returning;
+            returning = null;
+            return connection;
+        }
+
+        /**
+         * @return true if the player has come back and poll() would return their connection
+         */
+        public synchronized boolean isReturning() {
+            return returning != null;
+        }
+
+        /**
+         * Waits for the player to come back.
+         *
+         * @param millis - how long to wait
+         * @return their new connection, or null if they didn't come back in time
+         */
+        public synchronized PlayerConnection await(long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            while (returning == null && !closed) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            return poll();
+        }
+
+        private void close() {
+            PlayerConnection leftOver;
+            synchronized (this) {
+                closed = true;
+                leftOver = returning;
+                returning = null;
+                notifyAll();
+            }
+            if (leftOver != null) {
+                leftOver.getOutput().println("That match is over, type 'nc localhost 1024' to play again!");
+                leftOver.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The front end for running matches on several server processes (shards) at once. Players connect to the router,
+ * which picks a shard for them and then just passes bytes both ways between the player and the shard until either
+ * side hangs up. It never looks at what's being sent: each direction has one direct buffer that the socket reads
+ * into and the other socket writes straight out of, so nothing is copied or parsed along the way.
+ *
+ * Each shard is a normal server started with --metrics-port, and the router polls every shard's metrics twice a
+ * second to see how many matches it's running. Players are paired by the shard they end up on, so connections are
+ * sent two at a time to the shard with the fewest live matches. A shard with a player already waiting for an
+ * opponent (say the other half of a pair went to play the computer) gets the next single connection instead.
+ */
+public class ShardRouter {
+
+    private static final long POLL_MILLIS = 500;
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final int portNumber;
+    private final List<Shard> shards;
+    private final ProxyLoop[] loops;
+    private int nextLoop;
+    // the shard the second connection of a pair goes to, only used by the accepting thread
+    private Shard pairShard;
+
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder backendFailures = new LongAdder();
+
+    /**
+     * @param portNumber - port players connect to
+     * @param shards     - every backend, in the form host:port:metricsPort
+     * @param loopCount  - selector threads that pass the bytes along
+     */
+    public ShardRouter(int portNumber, List<String> shards, int loopCount) {
+        this.portNumber = portNumber;
+        this.shards = new ArrayList<>();
+        for (String shard : shards) {
+            String[] parts = shard.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Shards are host:port:metricsPort, not " + shard);
+            }
+            this.shards.add(new Shard(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+        }
+        if (this.shards.isEmpty()) {
+            throw new IllegalArgumentException("The router needs at least one shard");
+        }
+        this.loops = new ProxyLoop[loopCount];
+    }
+
+    /**
+     * Starts polling the shards and the proxy loops, then accepts players on the calling thread.
+     */
+    public void start() throws IOException {
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "connect4-router-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the first poll is done before accepting anyone, so the router doesn't start out thinking every shard is down
+        pollShards();
+        poller.scheduleWithFixedDelay(this::pollShards, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new ProxyLoop();
+            Thread loopThread = new Thread(loops[i], "connect4-router-" + i);
+            loopThread.setDaemon(true);
+            loopThread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber), 1024);
+            Log.info("Routing port " + portNumber + " to " + shards);
+            while (true) {
+                accept(serverChannel);
+            }
+        }
+    }
+
+    /**
+     * Accepts one player and hands them to the next proxy loop. Anything that goes wrong only turns that player
+     * away, the router carries on accepting everyone else.
+     *
+     * @throws IOException only if the router's own socket has been closed
+     */
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel client;
+        try {
+            client = serverChannel.accept();
+        } catch (IOException e) {
+            if (!serverChannel.isOpen()) {
+                throw e;
+            }
+            // most likely out of file descriptors, so give connections a moment to close before trying again
+            Log.warn("Couldn't accept a player: " + e);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            return;
+        }
+        try {
+            client.configureBlocking(false);
+            // players and shards both send small messages that shouldn't wait for the other side's delayed ACK
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Shard shard = pickShard();
+            if (shard == null) {
+                Log.warn("No shard is up, turning a player away");
+                client.close();
+                return;
+            }
+            routed.increment();
+            loops[nextLoop].register(client, shard);
+            nextLoop = (nextLoop + 1) % loops.length;
+        } catch (IOException e) {
+            Log.warn("Couldn't set up a player's connection: " + e);
+            try {
+                client.close();
+            } catch (IOException closing) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    /**
+     * Picks the shard for the next connection: the other half of the current pair, or a shard with a player waiting
+     * on their own, or else the least loaded shard, which the next connection then goes to as well.
+     *
+     * @return the shard, or null if none of them are up
+     */
+    private Shard pickShard() {
+        if (pairShard != null && pairShard.up) {
+            Shard shard = pairShard;
+            pairShard = null;
+            shard.routed();
+            return shard;
+        }
+        pairShard = null;
+        Shard leastLoaded = null;
+        Shard waiting = null;
+        for (Shard shard : shards) {
+            if (!shard.up) {
+                continue;
+            }
+            if (shard.waitingPlayers > 0 && (waiting == null || shard.load() < waiting.load())) {
+                waiting = shard;
+            }
+            if (leastLoaded == null || shard.load() < leastLoaded.load()) {
+                leastLoaded = shard;
+            }
+        }
+        if (waiting != null) {
+            // until the next poll says otherwise, assume this connection is their opponent
+            waiting.routed();
+            return waiting;
+        }
+        if (leastLoaded != null) {
+            leastLoaded.routed();
+            pairShard = leastLoaded;
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Reads every shard's live match count and waiting players from its metrics endpoint. A shard that doesn't
+     * answer gets no new players until it does.
+     */
+    private void pollShards() {
+        for (Shard shard : shards) {
+            double matches = -1;
+            double waiting = 0;
+            try {
+                HttpURLConnection http = (HttpURLConnection) new URL("http", shard.host, shard.metricsPort,
+                        "/metrics").openConnection();
+                http.setConnectTimeout((int) POLL_MILLIS);
+                http.setReadTimeout((int) POLL_MILLIS);
+                try (BufferedReader metrics = new BufferedReader(new InputStreamReader(http.getInputStream(),
+                        StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = metrics.readLine()) != null) {
+                        if (line.startsWith("connect4_active_matches ")) {
+                            matches = Double.parseDouble(line.substring(line.indexOf(' ') + 1));
+                        } else if (line.startsWith("connect4_players_waiting ")) {
+                            waiting = Double.parseDouble(line.substring(line.indexOf(' ') + 1));
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                matches = -1;
+            }
+            shard.update(matches, waiting);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("routed=" + routed.sum() + " backendFailures=" + backendFailures.sum());
+        for (Shard shard : shards) {
+            text.append(' ').append(shard).append(shard.up ? "" : "(down)")
+                    .append(" matches=").append(shard.liveMatches);
+        }
+        return text.toString();
+    }
+
+    /**
+     * One backend server. The counts are written by the polling thread and read by the accepting thread, and being
+     * a poll behind is fine for picking a shard.
+     */
+    private static class Shard {
+
+        final String host;
+        final int port;
+        final int metricsPort;
+        final InetSocketAddress address;
+        volatile boolean up;
+        volatile int liveMatches;
+        volatile int waitingPlayers;
+        // connections sent since the last poll, so a burst of players doesn't all go to the same shard
+        volatile int routedSincePoll;
+
+        Shard(String host, int port, int metricsPort) {
+            this.host = host;
+            this.port = port;
+            this.metricsPort = metricsPort;
+            this.address = new InetSocketAddress(host, port);
+        }
+
+        /**
+         * @param matches - live matches, or -1 if the shard didn't answer
+         * @param waiting - players waiting for an opponent
+         */
+        void update(double matches, double waiting) {
+            up = matches >= 0;
+            liveMatches = (int) Math.max(0, matches);
+            waitingPlayers = (int) waiting;
+            routedSincePoll = 0;
+        }
+
+        /**
+         * A connection has been sent here. Until the next poll it's assumed to be the opponent of one of the players
+         * the shard said were waiting, whichever way it was picked, so a stale count can't keep drawing players in.
+         * Only the accepting thread calls this.
+         */
+        void routed() {
+            waitingPlayers = Math.max(0, waitingPlayers - 1);
+            routedSincePoll++;
+        }
+
+        /**
+         * @return live matches, counting every two players sent since the last poll as another match
+         */
+        double load() {
+            return liveMatches + routedSincePoll / 2.0;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * One selector thread that passes bytes along for a share of the players.
+     */
+    private class ProxyLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Object[]> newClients = new ConcurrentLinkedQueue<>();
+
+        ProxyLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel client, Shard shard) {
+            newClients.add(new Object[]{client, shard});
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Object[] entry;
+                    while ((entry = newClients.poll()) != null) {
+                        connect((SocketChannel) entry[0], (Shard) entry[1]);
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Pipe pipe = (Pipe) key.attachment();
+                        try {
+                            pipe.ready(key);
+                        } catch (IOException e) {
+                            pipe.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.error("Exception caught in router loop", e);
+                }
+            }
+        }
+
+        /**
+         * Starts connecting to the shard without waiting. Nothing is read from the player until the shard has
+         * answered, so anything they type early just waits in their socket.
+         */
+        private void connect(SocketChannel client, Shard shard) {
+            try {
+                SocketChannel backend = SocketChannel.open();
+                backend.configureBlocking(false);
+                backend.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Pipe pipe = new Pipe(client, backend, shard);
+                pipe.backendKey = backend.register(selector, SelectionKey.OP_CONNECT, pipe);
+                if (backend.connect(shard.address)) {
+                    pipe.connected();
+                }
+            } catch (IOException e) {
+                backendFailures.increment();
+                Log.warn("Couldn't reach shard " + shard + ": " + e);
+                try {
+                    client.close();
+                } catch (IOException closing) {
+                    // nothing left to clean up
+                }
+            }
+        }
+
+        /**
+         * A player and their shard. Each direction has its own buffer, and only the channel being read into a
+         * buffer or written out of it is registered for it at any time, so a slow reader on one side stops the
+         * router reading from the other side instead of buffering without limit.
+         */
+        private class Pipe {
+
+            private final SocketChannel client, backend;
+            private final Shard shard;
+            private final ByteBuffer toBackend = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            private final ByteBuffer toClient = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            private SelectionKey clientKey, backendKey;
+            // once either side hangs up, whatever is still buffered for the other side is sent before closing
+            private boolean closing;
+
+            Pipe(SocketChannel client, SocketChannel backend, Shard shard) {
+                this.client = client;
+                this.backend = backend;
+                this.shard = shard;
+            }
+
+            void connected() throws IOException {
+                backendKey.interestOps(SelectionKey.OP_READ);
+                clientKey = client.register(selector, SelectionKey.OP_READ, this);
+            }
+
+            void ready(SelectionKey key) throws IOException {
+                if (!key.isValid()) {
+                    // closed while handling the other side's key in the same select
+                    return;
+                }
+                if (key == backendKey && key.isConnectable()) {
+                    try {
+                        backend.finishConnect();
+                    } catch (IOException e) {
+                        backendFailures.increment();
+                        Log.warn("Couldn't reach shard " + shard + ": " + e);
+                        throw e;
+                    }
+                    connected();
+                    return;
+                }
+                boolean fromClient = key == clientKey;
+                if (key.isValid() && key.isWritable()) {
+                    drain(fromClient ? client : backend, fromClient ? toClient : toBackend);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    fill(fromClient ? client : backend, fromClient ? toBackend : toClient);
+                }
+            }
+
+            /**
+             * Reads what's arrived on one side and writes as much of it as the other side takes.
+             */
+            private void fill(SocketChannel from, ByteBuffer buffer) throws IOException {
+                if (from.read(buffer) == -1) {
+                    closing = true;
+                    if (toBackend.position() == 0 && toClient.position() == 0) {
+                        close();
+                        return;
+                    }
+                    SelectionKey fromKey = keyFor(from);
+                    fromKey.interestOps(fromKey.interestOps() & ~SelectionKey.OP_READ);
+                }
+                drain(from == client ? backend : client, buffer);
+            }
+
+            /**
+             * Writes a buffer out to one side. Reading into the buffer stops while the side can't keep up, and
+             * starts again once it's all been written.
+             */
+            private void drain(SocketChannel to, ByteBuffer buffer) throws IOException {
+                buffer.flip();
+                to.write(buffer);
+                buffer.compact();
+                SelectionKey toKey = keyFor(to);
+                SelectionKey fromKey = keyFor(to == client ? backend : client);
+                if (buffer.position() > 0) {
+                    toKey.interestOps(toKey.interestOps() | SelectionKey.OP_WRITE);
+                    if (fromKey.isValid()) {
+                        fromKey.interestOps(fromKey.interestOps() & ~SelectionKey.OP_READ);
+                    }
+                    return;
+                }
+                toKey.interestOps(toKey.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closing) {
+                    if (toBackend.position() == 0 && toClient.position() == 0) {
+                        close();
+                    }
+                } else if (fromKey.isValid()) {
+                    fromKey.interestOps(fromKey.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+
+            private SelectionKey keyFor(SocketChannel channel) {
+                return channel == client ? clientKey : backendKey;
+            }
+
+            void close() {
+                if (clientKey != null) {
+                    clientKey.cancel();
+                }
+                backendKey.cancel();
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+                try {
+                    backend.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The computer opponent. It picks a move with a negamax search with alpha-beta pruning over the same bitboard layout
+ * as BitBoard, searching one ply deeper each round (iterative deepening) until it runs out of thinking time.
+ *
+ * A few things keep the search small:
+ * - moves that create the most winning spots are tried first, then the middle columns before the edges
+ * - a move that lets the opponent win straight away is never tried, and if the opponent threatens to win it's the
+ *   only move considered
+ * - results are cached in a TranspositionTable that all solvers share, under the same key as the position's mirror
+ *   image, since mirroring a position doesn't change its score
+ *
+ * The first move at the root is searched on the calling thread to get a good alpha, then the other moves are searched
+ * at the same time with fork/join, each one starting from the best score found so far.
+ *
+ * Scores are from the point of view of the player to move. A win is WIN_SCORE minus the number of discs on the board
+ * when it happens, so quicker wins score higher. Positions the search can't see to the end are guessed by
+ * evaluate(), which always scores less than any win.
+ */
+public class Solver {
+
+    public static final int WIN_SCORE = 100;
+
+    private static final int WIDTH = BitBoard.COLUMNS, HEIGHT = BitBoard.ROWS, COLUMN_HEIGHT = HEIGHT + 1;
+    private static final int MAX_MOVES = WIDTH * HEIGHT;
+    private static final long BOTTOM, BOARD_MASK, CENTER_COLUMN;
+    private static final long COLUMN_MASK = (1L << COLUMN_HEIGHT) - 1;
+    // the order columns are tried in when nothing else tells them apart, middle first
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    // how many nodes are searched between looking at the clock
+    private static final int CLOCK_CHECK_MASK = 1023;
+
+    static {
+        long bottom = 0;
+        for (int column = 0; column < WIDTH; column++) {
+            bottom |= 1L << (column * COLUMN_HEIGHT);
+        }
+        BOTTOM = bottom;
+        BOARD_MASK = bottom * ((1L << HEIGHT) - 1);
+        CENTER_COLUMN = ((1L << HEIGHT) - 1) << (3 * COLUMN_HEIGHT);
+    }
+
+    private final TranspositionTable table;
+    private final ForkJoinPool pool;
+    private final int maxDepth;
+    private final long thinkNanos;
+    // answers shared by every solver, both optional
+    private OpeningBook book;
+    private PositionCache answers;
+
+    private long lastNodes;
+    private int lastScore, lastDepth;
+
+    /**
+     * @param table      - shared cache of search results
+     * @param pool       - runs the parallel part of the search
+     * @param difficulty - how deep the search may go
+     * @param thinkMillis - how long to think per move
+     */
+    public Solver(TranspositionTable table, ForkJoinPool pool, Difficulty difficulty, long thinkMillis) {
+        this(table, pool, difficulty.getMaxDepth(), thinkMillis);
+    }
+
+    public Solver(TranspositionTable table, ForkJoinPool pool, int maxDepth, long thinkMillis) {
+        this.table = table;
+        this.pool = pool;
+        this.maxDepth = maxDepth;
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+    }
+
+    /**
+     * Plays the book's move in any position it has, as long as the book searched no deeper than this solver may.
+     * That way the book only ever makes the computer faster, never better than its difficulty.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Remembers the answer to every search that finishes, and answers from the cache when a position comes up
+     * again. Searches that run out of time aren't cached, so a cached answer is always the one a search would find,
+     * however busy the server was when it was first searched.
+     */
+    public void setPositionCache(PositionCache answers) {
+        this.answers = answers;
+    }
+
+    /**
+     * Picks a column for the given player.
+     *
+     * @param board  - the current board, which isn't changed
+     * @param player - 0 for player 1, 1 for player 2
+     * @return a column from 0 to 6 that isn't full, or -1 if the board is full
+     */
+    public int bestMove(BitBoard board, int player) {
+        if (!board.getGeometry().isStandard()) {
+            throw new IllegalArgumentException("The computer only plays on the standard board, not " + board.getGeometry());
+        }
+        long current = board.getDiscs(player);
+        long mask = board.getDiscs(0) | board.getDiscs(1);
+        int moves = board.getMovesPlayed();
+        Search root = new Search(System.nanoTime() + thinkNanos);
+        table.newSearch();
+        lastNodes = 0;
+        lastDepth = 0;
+        lastScore = 0;
+
+        long possible = (mask + BOTTOM) & BOARD_MASK;
+        if (possible == 0) {
+            return -1;
+        }
+        long winningMoves = winningSpots(current, mask) & possible;
+        if (winningMoves != 0) {
+            lastScore = WIN_SCORE - (moves + 1);
+            return Long.numberOfTrailingZeros(winningMoves) / COLUMN_HEIGHT;
+        }
+        long key = canonicalKey(current + mask);
+        boolean mirrored = key != current + mask;
+        int known = book == null ? -1 : book.find(key);
+        if (known != -1 && OpeningBook.depth(known) <= maxDepth) {
+            lastScore = OpeningBook.score(known);
+            lastDepth = OpeningBook.depth(known);
+            return unmirror(OpeningBook.column(known), mirrored);
+        }
+        known = answers == null ? -1 : answers.get(key, maxDepth);
+        if (known != -1) {
+            lastScore = PositionCache.score(known);
+            lastDepth = PositionCache.depth(known);
+            return unmirror(PositionCache.column(known), mirrored);
+        }
+
+        List<Long> rootMoves = root.orderedMoves(current, mask, playable(current, mask));
+        if (rootMoves.isEmpty()) {
+            // every move loses, any legal one will do
+            rootMoves.add(Long.lowestOneBit(possible));
+        }
+        long bestMove = rootMoves.get(0);
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_MOVES - moves); depth++) {
+            try {
+                int[] result = searchRoot(root, current, mask, moves, depth, rootMoves);
+                bestMove = rootMoves.get(result[0]);
+                lastScore = result[1];
+                lastDepth = depth;
+                // try last round's best move first in the next round
+                rootMoves.remove(result[0]);
+                rootMoves.add(0, bestMove);
+                if (Math.abs(lastScore) > WIN_SCORE - MAX_MOVES - 1) {
+                    break; // the result is certain, searching deeper won't change it
+                }
+            } catch (RuntimeException e) {
+                if (!root.stopped.get()) {
+                    throw e;
+                }
+                break;
+            }
+        }
+        lastNodes = root.totalNodes.sum() + root.nodes;
+        int column = Long.numberOfTrailingZeros(bestMove) / COLUMN_HEIGHT;
+        if (answers != null && !root.stopped.get()) {
+            answers.put(key, maxDepth, unmirror(column, mirrored), lastScore, lastDepth);
+        }
+        return column;
+    }
+
+    /**
+     * Turns a column in the canonical position into the same column in the real one, or back again.
+     */
+    private static int unmirror(int column, boolean mirrored) {
+        return mirrored ? WIDTH - 1 - column : column;
+    }
+
+    /**
+     * @return { index of the best move in rootMoves, its score }
+     */
+    private int[] searchRoot(Search root, long current, long mask, int moves, int depth, List<Long> rootMoves) {
+        long first = rootMoves.get(0);
+        int best = -root.negamax((current | first) ^ (mask | first), mask | first, moves + 1, depth - 1,
+                -Integer.MAX_VALUE, Integer.MAX_VALUE);
+        AtomicInteger alpha = new AtomicInteger(best);
+
+        List<MoveTask> tasks = new ArrayList<>();
+        for (int i = 1; i < rootMoves.size(); i++) {
+            long move = rootMoves.get(i);
+            tasks.add(new MoveTask(root, (current | move) ^ (mask | move), mask | move, moves + 1, depth - 1, alpha));
+        }
+        int bestIndex = 0;
+        for (MoveTask task : tasks) {
+            pool.execute(task);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            int score = tasks.get(i).join();
+            if (score > best) {
+                best = score;
+                bestIndex = i + 1;
+            }
+        }
+        return new int[]{bestIndex, best};
+    }
+
+    /**
+     * Searches one root move on a fork/join worker, with the window narrowed to the best score found so far.
+     */
+    private class MoveTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Search root;
+        private final long current, mask;
+        private final int moves, depth;
+        private final AtomicInteger alpha;
+
+        MoveTask(Search root, long current, long mask, int moves, int depth, AtomicInteger alpha) {
+            this.root = root;
+            this.current = current;
+            this.mask = mask;
+            this.moves = moves;
+            this.depth = depth;
+            this.alpha = alpha;
+        }
+
+        @Override
+        protected Integer compute() {
+            Search search = new Search(root);
+            try {
+                int score = -search.negamax(current, mask, moves, depth, -Integer.MAX_VALUE, -alpha.get());
+                alpha.accumulateAndGet(score, Math::max);
+                return score;
+            } finally {
+                root.totalNodes.add(search.nodes);
+            }
+        }
+    }
+
+    /**
+     * @return the moves that don't hand the opponent a win, as single bits
+     */
+    private static long playable(long current, long mask) {
+        long possible = (mask + BOTTOM) & BOARD_MASK;
+        long opponentWins = winningSpots(current ^ mask, mask);
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            possible = forced;
+        }
+        // playing directly below an opponent's winning spot lets them play it
+        return possible & ~(opponentWins >>> 1);
+    }
+
+    /**
+     * Finds every empty cell that would complete 4 in a row for the player. Like BitBoard.hasWon(), this works one
+     * direction at a time with shifts, 1 for vertical, 7 for horizontal and 6 and 8 for the diagonals.
+     */
+    static long winningSpots(long position, long mask) {
+        // vertical, only 3 discs below an empty cell count
+        long spots = (position << 1) & (position << 2) & (position << 3);
+        for (int shift = COLUMN_HEIGHT - 1; shift <= COLUMN_HEIGHT + 1; shift++) {
+            long pair = (position << shift) & (position << 2 * shift);
+            spots |= pair & (position << 3 * shift);
+            spots |= pair & (position >>> shift);
+            pair = (position >>> shift) & (position >>> 2 * shift);
+            spots |= pair & (position << shift);
+            spots |= pair & (position >>> 3 * shift);
+        }
+        return spots & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Thrown out of the search when the thinking time is up. It's only ever used to unwind the stack, so it
+     * doesn't fill in a stack trace.
+     */
+    private static class OutOfTime extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        OutOfTime() {
+            super("Out of thinking time", null, false, false);
+        }
+    }
+
+    /**
+     * One thread's view of a search. Every thread counts its own nodes and adds them to the shared total when it's
+     * done, so counting doesn't need any synchronisation.
+     */
+    private class Search {
+
+        private final long deadline;
+        private final AtomicBoolean stopped;
+        private final LongAdder totalNodes;
+        private long nodes;
+
+        Search(long deadline) {
+            this.deadline = deadline;
+            this.stopped = new AtomicBoolean();
+            this.totalNodes = new LongAdder();
+        }
+
+        /**
+         * A search for another thread that shares this one's deadline and node total.
+         */
+        Search(Search root) {
+            this.deadline = root.deadline;
+            this.stopped = root.stopped;
+            this.totalNodes = root.totalNodes;
+        }
+
+        /**
+         * @param current - discs of the player to move
+         * @param mask    - discs of both players
+         * @param moves   - how many discs are on the board
+         * @param depth   - how many more moves to look ahead
+         * @return the score of the position for the player to move
+         */
+        int negamax(long current, long mask, int moves, int depth, int alpha, int beta) {
+            if ((++nodes & CLOCK_CHECK_MASK) == 0 && (stopped.get() || System.nanoTime() - deadline > 0)) {
+                stopped.set(true);
+                throw new OutOfTime();
+            }
+            if (moves == MAX_MOVES) {
+                return 0;
+            }
+            long possible = (mask + BOTTOM) & BOARD_MASK;
+            if ((winningSpots(current, mask) & possible) != 0) {
+                return WIN_SCORE - (moves + 1);
+            }
+            long candidates = playable(current, mask);
+            long forced = possible & winningSpots(current ^ mask, mask);
+            if (candidates == 0 || (forced & (forced - 1)) != 0) {
+                // every move lets the opponent win, or they have two threats and only one can be blocked
+                return -(WIN_SCORE - (moves + 2));
+            }
+            if (depth == 0) {
+                return evaluate(current, mask);
+            }
+
+            long key = canonicalKey(current + mask);
+            long entry = table.probe(key);
+            if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+                int stored = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT) {
+                    return stored;
+                } else if (bound == TranspositionTable.LOWER_BOUND) {
+                    alpha = Math.max(alpha, stored);
+                } else {
+                    beta = Math.min(beta, stored);
+                }
+                if (alpha >= beta) {
+                    return stored;
+                }
+            }
+
+            int originalAlpha = alpha;
+            int best = -Integer.MAX_VALUE;
+            for (long move : orderedMoves(current, mask, candidates)) {
+                int score = -negamax((current | move) ^ (mask | move), mask | move, moves + 1, depth - 1,
+                        -beta, -alpha);
+                if (score > best) {
+                    best = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+            int bound = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                    : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            table.store(key, best, depth, bound);
+            return best;
+        }
+
+        /**
+         * Sorts the candidate moves so the ones that create the most winning spots come first, with the middle
+         * columns first when that's a tie.
+         */
+        List<Long> orderedMoves(long current, long mask, long candidates) {
+            List<Long> moves = new ArrayList<>(WIDTH);
+            int[] threats = new int[WIDTH];
+            for (int column : COLUMN_ORDER) {
+                long move = candidates & (((1L << HEIGHT) - 1) << (column * COLUMN_HEIGHT));
+                if (move == 0) {
+                    continue;
+                }
+                int created = Long.bitCount(winningSpots(current | move, mask | move));
+                // insertion sort, it's never more than 7 moves
+                int position = moves.size();
+                while (position > 0 && threats[position - 1] < created) {
+                    threats[position] = threats[position - 1];
+                    position--;
+                }
+                threats[position] = created;
+                moves.add(position, move);
+            }
+            return moves;
+        }
+    }
+
+    /**
+     * @return the key of the position on the board, for the player whose turn it is
+     */
+    public static long positionKey(BitBoard board) {
+        return board.getDiscs(board.getMovesPlayed() % 2) + (board.getDiscs(0) | board.getDiscs(1));
+    }
+
+    /**
+     * @param key - current + mask, which is different for every position: each column's discs plus its lowest empty
+     *            cell
+     * @return the smaller of the key and its mirror image's key, so a position and its mirror look the same to every
+     * cache
+     */
+    public static long canonicalKey(long key) {
+        return Math.min(key, mirror(key));
+    }
+
+    /**
+     * @return the key with the columns in the opposite order
+     */
+    public static long mirror(long key) {
+        long mirrored = 0;
+        for (int column = 0; column < WIDTH; column++) {
+            mirrored |= ((key >>> (column * COLUMN_HEIGHT)) & COLUMN_MASK) << ((WIDTH - 1 - column) * COLUMN_HEIGHT);
+        }
+        return mirrored;
+    }
+
+    /**
+     * Guesses how good a position is when the search can't see to the end: winning spots each player has, and
+     * discs in the middle column, which is part of the most lines. Always between -40 and 40, well below any win.
+     */
+    private static int evaluate(long current, long mask) {
+        long opponent = current ^ mask;
+        int threats = Long.bitCount(winningSpots(current, mask)) - Long.bitCount(winningSpots(opponent, mask));
+        int center = Long.bitCount(current & CENTER_COLUMN) - Long.bitCount(opponent & CENTER_COLUMN);
+        return Math.max(-40, Math.min(40, threats * 4 + center * 2));
+    }
+
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    public int getLastDepth() {
+        return lastDepth;
+    }
+}
@@ -0,0 +1,211 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a match to everyone watching it. Each update (what just happened plus the board) is drawn and encoded
+ * once into a byte array that's never changed afterwards, and that same array is handed to every watcher, so a
+ * hundred watchers cost a hundred writes but only one render.
+ *
+ * The match thread never writes to a watcher's socket itself, it only swaps the watcher's next update and, if
+ * nothing is being sent yet, starts a send on the executor. Every update is a whole board, so a watcher that falls
+ * behind simply skips to the newest one. A watcher whose socket hasn't taken a write for STALL_NANOS is dropped: every
+ * write has a timer, and if it fires before the write is done the socket is closed, which ends the write and gives
+ * the executor's thread back. That happens whether or not the match has anything new to send.
+ */
+public class SpectatorBroadcast {
+
+    // a watcher whose write has been stuck for this long is disconnected
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // one thread for every match's write timers, all it ever does is cancel or close
+    private static final ScheduledThreadPoolExecutor STALL_TIMERS = new ScheduledThreadPoolExecutor(1, task -> {
+        Thread thread = new Thread(task, "connect4-spectator-stalls");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // nearly every write finishes in time, so its cancelled timer shouldn't sit in the queue for 5 seconds
+        STALL_TIMERS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final long matchNumber;
+    private final Executor executor;
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+    // only used by the match thread, in publish()
+    private final BoardRenderer renderer = new BoardRenderer(new Player('R', 'Y'), 'O');
+    private volatile byte[] current;
+    private volatile byte[] last;
+    private volatile int movesPlayed;
+
+    /**
+     * @param matchNumber - the number players type to watch this match
+     * @param executor    - runs the writes to the watchers' sockets
+     */
+    public SpectatorBroadcast(long matchNumber, Executor executor) {
+        this.matchNumber = matchNumber;
+        this.executor = executor;
+    }
+
+    public long getMatchNumber() {
+        return matchNumber;
+    }
+
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+
+    public boolean isFinished() {
+        return last != null;
+    }
+
+    /**
+     * Starts sending the match to a new watcher, beginning with the latest board.
+     *
+     * @param spectator - the watcher's connection, closed once the match is over or if they fall too far behind
+     * @return false if the match has already finished
+     */
+    public boolean watch(PlayerConnection spectator) {
+        if (isFinished()) {
+            return false;
+        }
+        Watcher watcher = new Watcher(spectator);
+        watchers.add(watcher);
+        ServerMetrics.get().spectatorJoined();
+        byte[] latest = current;
+        if (latest != null) {
+            watcher.offer(latest);
+        }
+        // the match may have finished while the watcher was being added, so make sure they get the result
+        if (isFinished()) {
+            watcher.offer(last);
+        }
+        return true;
+    }
+
+    /**
+     * Sends what just happened and the board to every watcher. Called by the match thread after every move.
+     *
+     * @param board   - the board after the move
+     * @param message - a line describing the move
+     */
+    public void publish(BitBoard board, String message) {
+        movesPlayed = board.getMovesPlayed();
+        current = encode(board, message);
+        for (Watcher watcher : watchers) {
+            watcher.offer(current);
+        }
+    }
+
+    /**
+     * Sends the result to every watcher and disconnects them once it's been written. Only the first call does
+     * anything, so it's safe to call again when the match ends early.
+     *
+     * @param board   - the final board
+     * @param message - the result
+     */
+    public void finish(BitBoard board, String message) {
+        if (isFinished()) {
+            return;
+        }
+        last = encode(board, message);
+        current = last;
+        for (Watcher watcher : watchers) {
+            watcher.offer(last);
+        }
+    }
+
+    private byte[] encode(BitBoard board, String message) {
+        byte[] frame = renderer.render(board);
+        byte[] text = ("\n[Match " + matchNumber + "] " + message + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] update = new byte[text.length + frame.length];
+        System.arraycopy(text, 0, update, 0, text.length);
+        System.arraycopy(frame, 0, update, text.length, frame.length);
+        return update;
+    }
+
+    /**
+     * One watcher. At most one send runs at a time, and the update waiting to be sent is replaced whenever a newer
+     * one arrives.
+     */
+    private class Watcher {
+
+        private final PlayerConnection connection;
+        private final AtomicReference<byte[]> next = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Watcher(PlayerConnection connection) {
+            this.connection = connection;
+        }
+
+        void offer(byte[] update) {
+            next.set(update);
+            if (sending.compareAndSet(false, true)) {
+                executor.execute(this::send);
+            }
+        }
+
+        private void send() {
+            while (true) {
+                byte[] update = next.getAndSet(null);
+                if (update == null) {
+                    sending.set(false);
+                    // an update may have arrived after the check but before sending was cleared
+                    if (next.get() == null || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (closed.get()) {
+                    return;
+                }
+                ScheduledFuture<?> stallTimer = STALL_TIMERS.schedule(this::stalled, STALL_NANOS, TimeUnit.NANOSECONDS);
+                try {
+                    connection.write(update);
+                } catch (IOException e) {
+                    close();
+                    return;
+                } finally {
+                    stallTimer.cancel(false);
+                }
+                if (update == last) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * The write has been stuck for STALL_NANOS, the watcher isn't reading. Closing the socket makes the write
+         * throw, so send() finishes.
+         */
+        private void stalled() {
+            if (!closed.get()) {
+                ServerMetrics.get().spectatorDropped();
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                watchers.remove(this);
+                ServerMetrics.get().spectatorLeft();
+                connection.close();
+            }
+        }
+    }
+}
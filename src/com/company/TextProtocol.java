@@ -0,0 +1,162 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+/**
+ * The human readable protocol used with 'nc localhost 1024', sending the same messages as ConnectionThread.
+ *
+ * Lines are parsed byte by byte as they arrive instead of being collected into Strings first: a line is either R
+ * (ready), a number (a column) or anything else. Numbers can start with a +, like the Integer.parseInt() the blocking
+ * server uses allows.
+ */
+class TextProtocol implements WireProtocol {
+
+    // a column number longer than this can't be on the board, and parsing it could overflow an int
+    private static final int MAX_DIGITS = 9;
+
+    private final NioServer.Connection connection;
+    private final int maxLineLength;
+    private int lineLength;
+    private int value;
+    private boolean allDigits = true;
+    private boolean plus;
+    private boolean ready;
+
+    /**
+     * @param connection    - the player's connection
+     * @param maxLineLength - the longest line the player can send before they're disconnected
+     */
+    TextProtocol(NioServer.Connection connection, int maxLineLength) {
+        this.connection = connection;
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    public void read(ByteBuffer input, Queue<Integer> commands) throws InputRejectedException {
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (b == '\n') {
+                if (ready && lineLength == 1) {
+                    commands.add(READY);
+                } else if (allDigits && digits() > 0 && digits() <= MAX_DIGITS) {
+                    commands.add(value);
+                } else {
+                    commands.add(OTHER);
+                }
+                lineLength = 0;
+                value = 0;
+                allDigits = true;
+                plus = false;
+                ready = false;
+            } else if (b != '\r') {
+                ready = lineLength == 0 && (b == 'R' || b == 'r');
+                if (lineLength == 0 && b == '+') {
+                    plus = true;
+                } else {
+                    allDigits &= b >= '0' && b <= '9';
+                    if (allDigits && digits() < MAX_DIGITS) {
+                        value = value * 10 + (b - '0');
+                    }
+                }
+                if (++lineLength > maxLineLength) {
+                    ServerMetrics.get().lineTooLong();
+                    throw new InputRejectedException("That's too long, nothing you need to type is over "
+                            + maxLineLength + " characters");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many characters of the line so far are digits, if it's a number
+     */
+    private int digits() {
+        return plus ? lineLength - 1 : lineLength;
+    }
+
+    @Override
+    public void welcome() {
+        connection.println("\nWelcome to connect4");
+        connection.println("Type R when you're ready to play, you'll be paired with the next ready player\n");
+    }
+
+    @Override
+    public void readyPrompt(boolean repeat) {
+        connection.println("Type R when you're ready to play, you'll be paired with the next ready player");
+    }
+
+    @Override
+    public void waitingForOpponent() {
+        connection.println("Waiting for an opponent..");
+    }
+
+    @Override
+    public void gameStarted(BitBoard board, int seat) {
+        connection.println("\n[Player " + (seat + 1) + "] Opponent found! Welcome to connect4");
+        connection.sendBoard(board);
+    }
+
+    @Override
+    public void yourTurn(int seat) {
+        connection.println(seat == 0 ? "[R] Your turn!" : "[Y] Your turn! ");
+    }
+
+    @Override
+    public void waitingFor(int seat) {
+        // the original game only tells player 2 when they're waiting
+        if (seat == 0) {
+            connection.println("Currently waiting for Player 1 to make a move..");
+        }
+    }
+
+    @Override
+    public void invalidColumn() {
+        connection.println("Enter a number between 1 to 7!");
+    }
+
+    @Override
+    public void moved(BitBoard board, int row, int column, int seat, boolean byYou) {
+        connection.sendBoard(board);
+        if (byYou) {
+            connection.println("Opponents turn..\n");
+        }
+    }
+
+    @Override
+    public void columnFull(BitBoard board, boolean byYou) {
+        if (byYou) {
+            connection.println("Column full! Try placing in a different column!");
+            connection.println("Opponents turn..\n");
+        } else {
+            connection.sendBoard(board);
+        }
+    }
+
+    @Override
+    public void won() {
+        connection.println("You won! ");
+        connection.println("To play again, please type 'nc localhost 1024'!");
+    }
+
+    @Override
+    public void lost() {
+        connection.println("The opponent has beaten you!");
+        connection.println("To play again, please type 'nc localhost 1024'!");
+    }
+
+    @Override
+    public void draw() {
+        connection.println("NO WINNER! please type 'nc localhost 1024' to play again!");
+    }
+
+    @Override
+    public void opponentLeft() {
+        connection.println("The opponent has disconnected. To play again, please type 'nc localhost 1024'!");
+    }
+
+    @Override
+    public void kicked(String reason) {
+        connection.println(reason + ". To play again, please type 'nc localhost 1024'!");
+    }
+}
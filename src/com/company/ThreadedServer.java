@@ -3,28 +3,162 @@ package com.company;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class sets up the network and allows the user to connect with a port number. It then starts two clients,
  * each being a player for the connect 4 game. When both clients have been accepted, a thread in the ConnectFour class
  * begins.
  *
+ * Startup options are passed as --name=value:
+ * --mode=nio       (default) every match runs on a small pool of selector threads, see NioServer
+ * --mode=blocking  the original server, one thread per match blocking on its sockets
+ * --mode=router    no matches at all, players are passed on to the least loaded of the --shards, see ShardRouter
+ * --shards=host:port:metricsPort,...  the servers the router sends players to, each started with --metrics-port
+ * --advertise=host:port  where players reconnect to with their session token in blocking mode, for a server
+ *                  behind the router, since tokens only work on the server that gave them out
+ * --threads=platform|virtual  what runs each match in blocking mode, virtual needs Java 21+
+ * --ready-timeout=60  seconds a player has to type R before being disconnected
+ * --turn-timeout=120  seconds a player has to make each move before being disconnected
+ * --max-line=64    the longest line a player can send, anyone sending a longer one is disconnected
+ * --input-rate=10  lines a second a player can keep sending, anyone sending faster is disconnected
+ * --input-burst=20  lines a player can send at once, after being quiet for a while. Neither counts moves made on
+ *                  the player's turn or the R that gets them into a match
+ * --reconnect-grace=30  seconds a match waits for a disconnected player to come back with their session token
+ * --think-easy=MS, --think-medium=MS, --think-hard=MS  how long the computer thinks per move at each difficulty
+ * --opening-book=FILE  the computer plays early moves from this book instead of searching, see OpeningBook
+ * --stats=N        print matchmaking queue depth and time-to-match every N seconds in blocking mode, or where
+ *                  players have been routed in router mode
+ * --log-level=info  server console logging: debug, info, warn or error
+ * --console-boards=true  also log every board sent to a player (blocking mode), the same as --log-level=debug
+ * --metrics-port=N  serve live match metrics at http://localhost:N/metrics, they're always available over JMX too
+ * --journal-dir=DIR  record every match in an append-only journal in DIR, so matches in progress survive a
+ *                  restart and finished games are archived in DIR/archive (see GameJournal)
+ * --journal-fsync=true  force every journal batch to disk, false leaves it to the OS
+ * --port=1024      port to listen on
+ * --loops=N        number of selector threads in nio and router mode, defaults to the number of cores
  */
 public class ThreadedServer {
 
+    // the journal starts a new segment and archives the old one's finished games after this many bytes
+    private static final long JOURNAL_SEGMENT_BYTES = 64L * 1024 * 1024;
+
     public static void main(String[] args) {
-        int portNumber = 1024;
-        try (
-                ServerSocket serverSocket = new ServerSocket(portNumber);
-        ) {
-            while (true) {
-                Socket client1=serverSocket.accept();
-                Socket client2=serverSocket.accept();
-                new ConnectFour.ConnectionThread(client1, client2).start();
+        Map<String, String> options = parseOptions(args);
+        int portNumber = Integer.parseInt(options.getOrDefault("port", "1024"));
+        String mode = options.getOrDefault("mode", "nio");
+        Log.setLevel(options.getOrDefault("log-level", "info"));
+        if (Boolean.parseBoolean(options.getOrDefault("console-boards", "false"))) {
+            Log.setLevel(Log.Level.DEBUG);
+        }
+        int loops = Integer.parseInt(options.getOrDefault("loops",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        try {
+            if (mode.equals("router")) {
+                ShardRouter router = new ShardRouter(portNumber,
+                        Arrays.asList(options.getOrDefault("shards", "").split(",")), loops);
+                if (options.containsKey("stats")) {
+                    logStats("Routing: ", router, Long.parseLong(options.get("stats")));
+                }
+                router.start();
+                return;
+            }
+            MetricsEndpoint.start(ServerMetrics.get(), Integer.parseInt(options.getOrDefault("metrics-port", "0")));
+            GameJournal journal = options.containsKey("journal-dir")
+                    ? GameJournal.open(Paths.get(options.get("journal-dir")), JOURNAL_SEGMENT_BYTES,
+                    Boolean.parseBoolean(options.getOrDefault("journal-fsync", "true")))
+                    : GameJournal.disabled();
+            long readyTimeoutMillis = TimeUnit.SECONDS.toMillis(
+                    Long.parseLong(options.getOrDefault("ready-timeout", "60")));
+            InputLimits limits = new InputLimits(Integer.parseInt(options.getOrDefault("max-line", "64")),
+                    Double.parseDouble(options.getOrDefault("input-rate", "10")),
+                    Integer.parseInt(options.getOrDefault("input-burst", "20")),
+                    TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("turn-timeout", "120"))));
+            if (mode.equals("blocking")) {
+                ExecutorService executor = MatchExecutors.forName(options.getOrDefault("threads", "platform"));
+                Matchmaker matchmaker = new Matchmaker(executor, readyTimeoutMillis);
+                matchmaker.setInputLimits(limits);
+                matchmaker.setReconnectGraceMillis(TimeUnit.SECONDS.toMillis(
+                        Long.parseLong(options.getOrDefault("reconnect-grace", "30"))));
+                matchmaker.setJournal(journal);
+                if (options.containsKey("advertise")) {
+                    matchmaker.setAdvertisedAddress(options.get("advertise"));
+                }
+                for (Difficulty difficulty : Difficulty.values()) {
+                    String thinkMillis = options.get("think-" + difficulty.name().toLowerCase());
+                    if (thinkMillis != null) {
+                        matchmaker.setComputerThinkMillis(difficulty, Long.parseLong(thinkMillis));
+                    }
+                }
+                if (options.containsKey("opening-book")) {
+                    OpeningBook book = OpeningBook.open(Paths.get(options.get("opening-book")));
+                    matchmaker.setOpeningBook(book);
+                    Log.info("Opening book has " + book);
+                }
+                matchmaker.start();
+                if (options.containsKey("stats")) {
+                    logStats("Matchmaking: ", matchmaker, Long.parseLong(options.get("stats")));
+                }
+                try (ServerSocket serverSocket = new ServerSocket(portNumber)) {
+                    serveBlocking(serverSocket, matchmaker);
+                }
+            } else {
+                // the nio server has no way for players to come back to a match, so recovered ones are over
+                for (GameRecord game : journal.getRecoveredGames()) {
+                    journal.matchEnded(game.getMatchId(), GameRecord.ABANDONED);
+                }
+                new NioServer(portNumber, loops, journal, readyTimeoutMillis, limits).start();
             }
         } catch (IOException e) {
-            System.out.println("Exception caught when trying to listen on port " + portNumber + " or listening for a connection");
-            System.out.println(e.getMessage());
+            Log.error("Exception caught when trying to listen on port " + portNumber
+                    + " or listening for a connection", e);
+        }
+    }
+
+    /**
+     * The blocking server. Every accepted socket goes to the Matchmaker, which pairs players as they become ready
+     * and runs each pair's ConnectionThread task on the given executor.
+     */
+    public static void serveBlocking(ServerSocket serverSocket, Matchmaker matchmaker) throws IOException {
+        while (true) {
+            Socket client = serverSocket.accept();
+            matchmaker.submit(client);
+        }
+    }
+
+    /**
+     * Prints the matchmaking queue depth and time-to-match, or the router's counts, every few seconds.
+     */
+    private static void logStats(String label, Object stats, long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "connect4-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> Log.info(label + stats),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Turns arguments like --mode=blocking into a map of "mode" to "blocking".
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int equals = arg.indexOf('=');
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            } else {
+                Log.warn("Ignoring unknown option " + arg);
+            }
         }
+        return options;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.company;
+
+/**
+ * Fixed-size cache of search results shared by every Solver, so positions that come up again (in the same search or
+ * in another AI game) don't have to be searched twice.
+ *
+ * Memory is bounded: the table is allocated once with a power of two number of buckets and never grows. Each
+ * bucket has two slots with different eviction policies. The first slot keeps the deepest result, it's only
+ * replaced by a search at least as deep or by any result once it's from an older search. The second slot always
+ * takes the newest result, so shallow entries near the leaves still get cached.
+ *
+ * Many search threads read and write the table at the same time without locking. Each slot stores the key XORed
+ * with the data next to the data itself, so if two threads write the same slot at once the key check fails and the
+ * slot just reads as a miss instead of returning another position's result.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0, LOWER_BOUND = 1, UPPER_BOUND = 2;
+
+    // data layout: score + 128 (8 bits) | depth (6 bits) | bound (2 bits) | generation (8 bits) | valid (1 bit)
+    private static final int DEPTH_SHIFT = 8, BOUND_SHIFT = 14, GENERATION_SHIFT = 16;
+    private static final long VALID = 1L << 24;
+
+    private final long[] checks;
+    private final long[] data;
+    private final int bucketBits;
+    private volatile int generation;
+
+    /**
+     * @param bucketBits - the table has 2^bucketBits buckets of two entries, each entry takes 16 bytes
+     */
+    public TranspositionTable(int bucketBits) {
+        this.bucketBits = bucketBits;
+        this.checks = new long[2 << bucketBits];
+        this.data = new long[2 << bucketBits];
+    }
+
+    /**
+     * Starts a new search, entries from earlier searches become the first to be evicted.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits)) << 1;
+    }
+
+    /**
+     * @param key - the position key
+     * @return the stored data to be read with score(), depth() and bound(), or 0 if the position isn't stored
+     */
+    public long probe(long key) {
+        int slot = bucket(key);
+        for (int i = slot; i < slot + 2; i++) {
+            long entry = data[i];
+            if (entry != 0 && (checks[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    public void store(long key, int score, int depth, int bound) {
+        long entry = (score + 128) | ((long) depth << DEPTH_SHIFT) | ((long) bound << BOUND_SHIFT)
+                | ((long) generation << GENERATION_SHIFT) | VALID;
+        int slot = bucket(key);
+        long deepest = data[slot];
+        boolean replaceDeepest = deepest == 0
+                || (checks[slot] ^ deepest) == key
+                || generation(deepest) != generation
+                || depth(deepest) <= depth;
+        if (!replaceDeepest) {
+            slot++;
+        }
+        data[slot] = entry;
+        checks[slot] = key ^ entry;
+    }
+
+    public static int score(long entry) {
+        return (int) (entry & 0xFF) - 128;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0x3F;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+}
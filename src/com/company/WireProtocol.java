@@ -0,0 +1,80 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+/**
+ * How a match talks to one connection in the NIO server. The match only deals in game events (a move was made,
+ * it's your turn, you won) and commands (ready, play a column), and each protocol decides what those look like on
+ * the wire.
+ *
+ * The protocol is picked per connection from the first byte the client sends, see BinaryProtocol.MAGIC. Anything
+ * else, including a client that doesn't send anything, gets the text protocol that nc uses.
+ */
+interface WireProtocol {
+
+    // commands handed to the match. Any value of 0 or more is the column number the player typed, starting at 1
+    int READY = -1;
+    int OTHER = -2;
+
+    /**
+     * Parses whatever has arrived so far. Partial commands are remembered until the rest of them arrives.
+     *
+     * @param input    - bytes read from the socket
+     * @param commands - complete commands are added here
+     * @throws InputRejectedException if the player sent something no client ever would, like a line too long
+     */
+    void read(ByteBuffer input, Queue<Integer> commands) throws InputRejectedException;
+
+    /**
+     * The player has just connected to the lobby, they don't have an opponent or a seat yet.
+     */
+    void welcome();
+
+    /**
+     * @param repeat - true if the player sent something other than ready
+     */
+    void readyPrompt(boolean repeat);
+
+    /**
+     * The player is ready and nobody else is yet.
+     */
+    void waitingForOpponent();
+
+    /**
+     * Both players are ready and have been paired, this is when they're told which player they are and the only
+     * time the full board is sent.
+     */
+    void gameStarted(BitBoard board, int seat);
+
+    void yourTurn(int seat);
+
+    void waitingFor(int seat);
+
+    void invalidColumn();
+
+    /**
+     * @param byYou - true for the player who made the move
+     */
+    void moved(BitBoard board, int row, int column, int seat, boolean byYou);
+
+    /**
+     * @param byYou - true for the player who picked the full column
+     */
+    void columnFull(BitBoard board, boolean byYou);
+
+    void won();
+
+    void lost();
+
+    void draw();
+
+    void opponentLeft();
+
+    /**
+     * The player is about to be disconnected for breaking one of the InputLimits or running out of time.
+     *
+     * @param reason - what they did, for people
+     */
+    void kicked(String reason);
+}
@@ -0,0 +1,457 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the bitboard against the char[6][7] board and the four check methods it replaced, copied below exactly as
+ * they were.
+ *
+ * They don't always agree, on purpose. The old checks stopped at the first ArrayIndexOutOfBoundsException, and most
+ * boards throw one long before the whole board has been scanned: checkDiagonal throws as soon as the player has a
+ * disc in column 0, checkHorizontal as soon as they have 3 in a row touching the right edge. Every win after that
+ * point in the scan was missed and the game carried on. The bitboard finds every win, so where the two differ this
+ * checks that the old code missed a win that's really there (by scanning every line with bounds checks instead), and
+ * never the other way round.
+ */
+class BitBoardTest {
+
+    private static final char R = 'R', Y = 'Y';
+    // every position this many moves in or fewer is checked, around 800,000 of them
+    private static final int EXHAUSTIVE_PLIES = 9;
+    private static final int RANDOM_GAMES = 20_000;
+
+    private static PrintStream console;
+
+    @BeforeAll
+    static void silenceConsole() {
+        // the old checkDiagonal prints every diagonal it finds
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterAll
+    static void restoreConsole() {
+        System.setOut(console);
+    }
+
+    @Test
+    void placesDiscsWhereTheOldBoardDid() {
+        Random random = new Random(2022);
+        for (int game = 0; game < 1000; game++) {
+            BitBoard board = new BitBoard();
+            LegacyBoard legacy = new LegacyBoard();
+            for (int move = 0; move < 60; move++) {
+                int column = random.nextInt(BitBoard.COLUMNS);
+                int player = move % 2;
+                boolean full = !board.canPlay(column);
+                int row = board.play(column, player);
+                legacy.placePiece(legacy.board, column, player == 0 ? R : Y, LegacyBoard.NOWHERE);
+                assertEquals(full, row == -1);
+                if (!full) {
+                    assertEquals(player == 0 ? R : Y, legacy.board[row][column]);
+                }
+                assertBoardsMatch(board, legacy);
+            }
+        }
+    }
+
+    @Test
+    void agreesWithTheOldChecksOnEveryEarlyPosition() {
+        Tally tally = new Tally();
+        explore(new BitBoard(), EXHAUSTIVE_PLIES, new HashSet<>(), tally);
+        assertTrue(tally.positions > 700_000, tally.positions + " positions");
+        assertTrue(tally.wins > 0, "no wins reached");
+        // the old checks already miss wins this early, this is here to fail if that stops being true
+        assertTrue(tally.missedByOldChecks > 0, "the old checks no longer miss any wins");
+    }
+
+    @Test
+    void agreesWithTheOldChecksOnRandomGames() {
+        Random random = new Random(42);
+        Tally tally = new Tally();
+        int gamesEndedDifferently = 0;
+        for (int game = 0; game < RANDOM_GAMES; game++) {
+            BitBoard board = new BitBoard();
+            LegacyBoard legacy = new LegacyBoard();
+            while (!board.isFull() && !board.hasWon(0) && !board.hasWon(1)) {
+                int column;
+                do {
+                    column = random.nextInt(BitBoard.COLUMNS);
+                } while (!board.canPlay(column));
+                int player = board.getMovesPlayed() % 2;
+                board.play(column, player);
+                legacy.placePiece(legacy.board, column, player == 0 ? R : Y, LegacyBoard.NOWHERE);
+                // the old game ran its checks after every move and kept the flags from one move to the next
+                legacy.runChecks();
+                compare(board, legacy, tally);
+            }
+            // compare() has already failed if the old checks saw a win first, so the only difference left is a win
+            // they missed, where the old game would have carried on
+            if (board.hasWon(0) || board.hasWon(1)) {
+                if (!legacy.isWinnerDecided) {
+                    gamesEndedDifferently++;
+                }
+            } else {
+                assertFalse(legacy.isWinnerDecided);
+            }
+        }
+        assertTrue(tally.wins > 0);
+        assertTrue(gamesEndedDifferently > 0, "the old checks no longer miss any wins");
+    }
+
+    private void explore(BitBoard board, int plies, Set<Long> seen, Tally tally) {
+        if (!seen.add(Solver.positionKey(board))) {
+            return;
+        }
+        LegacyBoard legacy = LegacyBoard.copyOf(board);
+        legacy.runChecks();
+        compare(board, legacy, tally);
+        if (plies == 0 || board.hasWon(0) || board.hasWon(1) || board.isFull()) {
+            return;
+        }
+        for (int column = 0; column < BitBoard.COLUMNS; column++) {
+            if (board.canPlay(column)) {
+                BitBoard next = copy(board);
+                next.play(column, board.getMovesPlayed() % 2);
+                explore(next, plies - 1, seen, tally);
+            }
+        }
+    }
+
+    /**
+     * The bitboard has to find exactly the wins a full bounds-checked scan finds, and every win the old checks found.
+     */
+    private static void compare(BitBoard board, LegacyBoard legacy, Tally tally) {
+        tally.positions++;
+        for (int player = 0; player < 2; player++) {
+            char letter = player == 0 ? R : Y;
+            boolean won = board.hasWon(player);
+            boolean oldWon = player == 0 ? legacy.isPlayerOneWinner : legacy.isPlayerTwoWinner;
+            if (won != scanForWin(legacy.board, letter)) {
+                fail("bitboard says " + won + " for " + letter + " on\n" + legacy);
+            }
+            if (oldWon && !won) {
+                fail("the old checks found a win for " + letter + " the bitboard didn't on\n" + legacy);
+            }
+            if (won) {
+                tally.wins++;
+                if (!oldWon) {
+                    tally.missedByOldChecks++;
+                }
+            }
+        }
+        boolean topRowFull = true;
+        for (int column = 0; column < BitBoard.COLUMNS; column++) {
+            topRowFull &= legacy.board[0][column] != legacy.boardPlaceHolder;
+        }
+        assertEquals(topRowFull, board.isFull());
+    }
+
+    /**
+     * Every line of 4, with the bounds checked instead of relying on exceptions.
+     */
+    private static boolean scanForWin(char[][] board, char letter) {
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+        for (int row = 0; row < board.length; row++) {
+            for (int column = 0; column < board[row].length; column++) {
+                for (int[] direction : directions) {
+                    int count = 0;
+                    for (int step = 0; step < 4; step++) {
+                        int r = row + step * direction[0];
+                        int c = column + step * direction[1];
+                        if (r < 0 || r >= board.length || c < 0 || c >= board[r].length || board[r][c] != letter) {
+                            break;
+                        }
+                        count++;
+                    }
+                    if (count == 4) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void assertBoardsMatch(BitBoard board, LegacyBoard legacy) {
+        for (int row = 0; row < BitBoard.ROWS; row++) {
+            for (int column = 0; column < BitBoard.COLUMNS; column++) {
+                int occupant = board.occupant(row, column);
+                char expected = occupant == 0 ? R : occupant == 1 ? Y : legacy.boardPlaceHolder;
+                assertEquals(expected, legacy.board[row][column], "row " + row + " column " + column);
+            }
+        }
+    }
+
+    private static BitBoard copy(BitBoard board) {
+        // replaying column by column from the bottom gives the same discs, the order they went in doesn't matter
+        // to anything that's checked
+        BitBoard copy = new BitBoard();
+        for (int column = 0; column < BitBoard.COLUMNS; column++) {
+            for (int row = BitBoard.ROWS - 1; row >= 0; row--) {
+                int occupant = board.occupant(row, column);
+                if (occupant != BitBoard.EMPTY) {
+                    copy.play(column, occupant);
+                }
+            }
+        }
+        return copy;
+    }
+
+    private static class Tally {
+        long positions;
+        long wins;
+        long missedByOldChecks;
+    }
+
+    /**
+     * The board and checks from ConnectFour.ConnectionThread before the bitboard, unchanged apart from showBoard(),
+     * which only printed the board, and the helpers at the end.
+     */
+    static class LegacyBoard {
+
+        static final PrintWriter NOWHERE = new PrintWriter(OutputStream.nullOutputStream());
+
+        final char[][] board = new char[6][7];
+        final char boardPlaceHolder = 'O';
+        boolean isWinnerDecided, isPlayerOneWinner, isPlayerTwoWinner;
+
+        LegacyBoard() {
+            fillBoard(board);
+        }
+
+        public void showBoard(char[][] board, PrintWriter terminalOutput) {
+        }
+
+        /**
+         * This method is responsible for showing the blueprint of the board, I used the letter 'O'
+         * to act as a placeholder until the user fills it up with either letter R or Y
+         *
+         * @param board - fills the 2d-array with all 'O' as the placeholder values
+         */
+        public void fillBoard(char[][] board) {
+            for (char[] row : board) {
+                Arrays.fill(row, boardPlaceHolder);
+            }
+        }
+
+        /**
+         * This method is responsible for placing player 1 or player 2's input into the board and printing
+         * out the result right as they've chosen what column to insert into. I basically brute force each column
+         * by checking bottom to top, while it may not be the most efficient, it's the only implementation I could get
+         * to work.
+         *
+         * @param board          - the 2d-array/board we want to place a letter into
+         * @param insertInColumn - keeps track of the column number the user wants to insert into
+         * @param letter         - stores either player 1 'R' or player 2 'Y' as a char
+         * @param terminalOutput - prints out result to terminal
+         */
+        public void placePiece(char[][] board, int insertInColumn, char letter, PrintWriter terminalOutput) {
+            if (board[5][insertInColumn] == boardPlaceHolder) {
+                board[5][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[4][insertInColumn] == boardPlaceHolder) {
+                board[4][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[3][insertInColumn] == boardPlaceHolder) {
+                board[3][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[2][insertInColumn] == boardPlaceHolder) {
+                board[2][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[1][insertInColumn] == boardPlaceHolder) {
+                board[1][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[0][insertInColumn] == boardPlaceHolder) {
+                board[0][insertInColumn] = letter;
+                showBoard(board, terminalOutput);
+            } else if (board[0][insertInColumn] != boardPlaceHolder) {
+                System.out.println("Column full! Try placing in a different column!");
+                terminalOutput.println("Column full! Try placing in a different column!");
+            }
+        }
+
+        /**
+         * This method checks each column vertically for a match of 4 of the same letters. My logic behind
+         * checking for a vertical match is to get the most recent letter placed into the board, then check the other
+         * rows in that column by incrementing the row by 1 more each time
+         *
+         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y'
+         */
+        public void checkVertical(char playerOneOrPlayerTwo) {
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        if (board[row][column] == playerOneOrPlayerTwo
+                                && board[row + 1][column] == playerOneOrPlayerTwo
+                                && board[row + 2][column] == playerOneOrPlayerTwo
+                                && board[row + 3][column] == playerOneOrPlayerTwo) {
+                            isWinnerDecided = true;
+                            if (playerOneOrPlayerTwo == 'R') {
+                                isPlayerOneWinner = true;
+                            } else if (playerOneOrPlayerTwo == 'Y') {
+                                isPlayerTwoWinner = true;
+                            }
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // No need to print out the exceptions
+            }
+        }
+
+        /**
+         * This method checks each row horizontally for a match of 4 of the same letters. My logic behind
+         * checking for a horizontal match is to get the most recent letter placed into the board, then check the other
+         * columns in that row by incrementing the column array index by 1 more each time
+         *
+         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y'
+         */
+        public void checkHorizontal(char playerOneOrPlayerTwo) {
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        if (board[row][column] == playerOneOrPlayerTwo &&
+                                board[row][column + 1] == playerOneOrPlayerTwo &&
+                                board[row][column + 2] == playerOneOrPlayerTwo &&
+                                board[row][column + 3] == playerOneOrPlayerTwo) {
+                            isWinnerDecided = true;
+                            if (playerOneOrPlayerTwo == 'R') {
+                                isPlayerOneWinner = true;
+                            } else if (playerOneOrPlayerTwo == 'Y') {
+                                isPlayerTwoWinner = true;
+                            }
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // no need to print out exception error if any occurs.
+            }
+        }
+
+        /**
+         * This method checks each column and row diagonally  for a match of 4 of the same
+         * letters. My logic behind checking for a diagonal match is to get the most recent letter placed into the board,
+         * then from that letter check the first letter diagonal to it (incrementing row by 1 and decrease column by 1).
+         * Then, I check if there is another diagonal letter by incrementing the row by 2 and decreasing column by 2,
+         * and finally I increment the row by 3 and decrement the column by 3 because the fourth diagonal letter
+         * should be 3 away from the first one.
+         *
+         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y' diagonally
+         */
+        public void checkDiagonal(char playerOneOrPlayerTwo) {
+            try {
+                for (int row = 0; row < board.length; row++) {
+                    for (int column = 0; column < board[row].length; column++) {
+                        if (board[row][column] == playerOneOrPlayerTwo
+                                && board[row + 1][column - 1] == playerOneOrPlayerTwo
+                                && board[row + 2][column - 2] == playerOneOrPlayerTwo
+                                && board[row + 3][column - 3] == playerOneOrPlayerTwo
+                        ) {
+                            System.out.println("diagonal found " + playerOneOrPlayerTwo);
+                            isWinnerDecided = true;
+                            if (playerOneOrPlayerTwo == 'R') {
+                                isPlayerOneWinner = true;
+                            } else if (playerOneOrPlayerTwo == 'Y') {
+                                isPlayerTwoWinner = true;
+                            }
+                        }
+                        if (board[row][column] == playerOneOrPlayerTwo
+                                && board[row + 1][column + 1] == playerOneOrPlayerTwo
+                                && board[row + 2][column + 2] == playerOneOrPlayerTwo
+                                && board[row + 3][column + 3] == playerOneOrPlayerTwo) {
+                            isWinnerDecided = true;
+                            if (playerOneOrPlayerTwo == 'R') {
+                                isPlayerOneWinner = true;
+                            } else if (playerOneOrPlayerTwo == 'Y') {
+                                isPlayerTwoWinner = true;
+                            }
+                        }
+
+                    }
+                }
+            } catch (Exception e) {
+                // don't print out exception if it occurs
+            }
+        }
+
+        /**
+         * This method checks for a negative diagonal, meaning it checks from top left to bottom right
+         *
+         * @param playerOneOrPlayerTwo - checks for 'R' and 'Y' diagonally
+         */
+        private void checkNegativeDiagonal(char playerOneOrPlayerTwo) {
+            try {
+                // only loop row and column until row and column equals 3 because there is only 3 possibilities of a
+                // negative slope/diagonal forming in a 6 by 7 grid.
+                for (int row = 0; row <= 3; row++) {
+                    for (int column = 0; column <= 3; column++) {
+                        if (board[row][column] == playerOneOrPlayerTwo
+                                && board[row + 1][column + 1] == playerOneOrPlayerTwo
+                                && board[row + 2][column + 2] == playerOneOrPlayerTwo
+                                && board[row + 3][column + 3] == playerOneOrPlayerTwo) {
+                            isWinnerDecided = true;
+                            if (playerOneOrPlayerTwo == 'R') {
+                                isPlayerOneWinner = true;
+                            } else if (playerOneOrPlayerTwo == 'Y') {
+                                isPlayerTwoWinner = true;
+                            }
+                        }
+                    }
+                }
+            } catch (Exception e) {
+            }
+        }
+
+        /**
+         * Runs the checks in the order ConnectionThread.run() did after every move.
+         */
+        void runChecks() {
+            checkNegativeDiagonal(R);
+            checkVertical(R);
+            checkHorizontal(R);
+            checkDiagonal(R);
+            checkNegativeDiagonal(Y);
+            checkVertical(Y);
+            checkHorizontal(Y);
+            checkDiagonal(Y);
+        }
+
+        static LegacyBoard copyOf(BitBoard bitBoard) {
+            LegacyBoard legacy = new LegacyBoard();
+            for (int row = 0; row < BitBoard.ROWS; row++) {
+                for (int column = 0; column < BitBoard.COLUMNS; column++) {
+                    int occupant = bitBoard.occupant(row, column);
+                    if (occupant != BitBoard.EMPTY) {
+                        legacy.board[row][column] = occupant == 0 ? R : Y;
+                    }
+                }
+            }
+            return legacy;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (char[] row : board) {
+                text.append(row).append('\n');
+            }
+            return text.toString();
+        }
+    }
+}
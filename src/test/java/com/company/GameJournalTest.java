@@ -0,0 +1,129 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Restarts a journal whose last batch was damaged the ways a crash leaves it, and checks the match in progress comes
+ * back as it was before the damaged batch.
+ */
+class GameJournalTest {
+
+    // GameJournal's MOVE record: type, match id, column, seat, millis
+    private static final byte MOVE = 3;
+    private static final int MOVE_LENGTH = 15;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAnUndamagedBatchAddedByHand() throws IOException {
+        long matchId = playThreeMoves();
+        appendBatch(moveRecord(matchId), 0, MOVE_LENGTH);
+        // makes sure the batches the other tests damage would otherwise be read
+        assertEquals(4, recoverOnlyGame(matchId).getMoveCount());
+    }
+
+    @Test
+    void ignoresABatchCutShort() throws IOException {
+        long matchId = playThreeMoves();
+        appendBatch(moveRecord(matchId), 0, 6);
+        GameRecord game = recoverOnlyGame(matchId);
+        assertEquals(3, game.getMoveCount());
+        assertEquals(11, game.getToken(0));
+        assertEquals(22, game.getToken(1));
+    }
+
+    @Test
+    void ignoresABatchThatFailsItsCrc() throws IOException {
+        long matchId = playThreeMoves();
+        appendBatch(moveRecord(matchId), 1, MOVE_LENGTH);
+        assertEquals(3, recoverOnlyGame(matchId).getMoveCount());
+    }
+
+    @Test
+    void ignoresAHeaderCutShort() throws IOException {
+        long matchId = playThreeMoves();
+        Files.write(segment(), new byte[]{0, 0, 0}, StandardOpenOption.APPEND);
+        assertEquals(3, recoverOnlyGame(matchId).getMoveCount());
+    }
+
+    /**
+     * Starts a match, plays columns 3, 4 and 3 and stops the journal without finishing it.
+     *
+     * @return the match's number
+     */
+    private long playThreeMoves() {
+        GameJournal journal = open();
+        long matchId = journal.matchStarted(GameRecord.HUMAN, BoardGeometry.STANDARD, 11, 22);
+        journal.movePlayed(matchId, 3, 0);
+        journal.movePlayed(matchId, 4, 1);
+        journal.movePlayed(matchId, 3, 0);
+        journal.close();
+        return matchId;
+    }
+
+    private GameRecord recoverOnlyGame(long matchId) {
+        GameJournal journal = open();
+        try {
+            List<GameRecord> games = journal.getRecoveredGames();
+            assertEquals(1, games.size());
+            GameRecord game = games.get(0);
+            assertEquals(matchId, game.getMatchId());
+            for (int move = 0; move < 3; move++) {
+                assertEquals(move == 1 ? 4 : 3, game.getColumn(move));
+                assertEquals(move == 1 ? 1 : 0, game.getSeat(move));
+            }
+            // the match numbers carry on after the recovered match, whatever happened to the last batch
+            assertTrue(journal.matchStarted(GameRecord.HUMAN, BoardGeometry.STANDARD) > matchId);
+            return game;
+        } finally {
+            journal.close();
+        }
+    }
+
+    private GameJournal open() {
+        try {
+            return GameJournal.open(directory, 1024 * 1024, false);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] moveRecord(long matchId) {
+        return ByteBuffer.allocate(MOVE_LENGTH).put(MOVE).putLong(matchId).put((byte) 4).put((byte) 1).putInt(100)
+                .array();
+    }
+
+    /**
+     * Adds a batch to the end of the segment the way GameJournal writes them, [length, CRC32, records].
+     *
+     * @param crcError - added to the right CRC, 0 for a batch that's intact
+     * @param written  - how many of the record bytes make it to the file
+     */
+    private void appendBatch(byte[] records, int crcError, int written) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(records);
+        ByteBuffer batch = ByteBuffer.allocate(8 + written);
+        batch.putInt(records.length).putInt((int) crc.getValue() + crcError).put(records, 0, written);
+        Files.write(segment(), batch.array(), StandardOpenOption.APPEND);
+    }
+
+    private Path segment() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-"))
+                    .max(Path::compareTo).orElseThrow();
+        }
+    }
+}
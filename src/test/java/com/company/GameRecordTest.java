@@ -0,0 +1,120 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GameRecordTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        GameRecord game = game(1, 20);
+        game.finish(GameRecord.DRAW, 60_000);
+        byte[] archive = write(game);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(archive));
+        GameRecord read = GameRecord.readFrom(in);
+        assertEquals(game.getMatchId(), read.getMatchId());
+        assertEquals(game.getGeometry().getColumns(), read.getGeometry().getColumns());
+        assertEquals(GameRecord.DRAW, read.getResult());
+        assertEquals(60_000, read.getEndMillis());
+        assertEquals(20, read.getMoveCount());
+        for (int move = 0; move < 20; move++) {
+            assertEquals(game.getColumn(move), read.getColumn(move));
+            assertEquals(game.getSeat(move), read.getSeat(move));
+            assertEquals(game.getMoveMillis(move), read.getMoveMillis(move));
+        }
+        assertNull(GameRecord.readFrom(in));
+    }
+
+    @Test
+    void rejectsLengthsNoGameCouldHave() {
+        // 2^31 - 1, which used to be allocated before anything else was checked
+        byte[] huge = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IOException.class, () -> read(huge));
+        // a length that never ends
+        byte[] endless = new byte[64];
+        Arrays.fill(endless, (byte) 0x80);
+        assertThrows(IOException.class, () -> read(endless));
+        assertThrows(IOException.class, () -> read(new byte[]{0}));
+    }
+
+    @Test
+    void rejectsGamesCutShort() throws IOException {
+        byte[] archive = write(game(1, 20));
+        for (int length = 1; length < archive.length; length++) {
+            byte[] torn = Arrays.copyOf(archive, length);
+            assertThrows(IOException.class, () -> read(torn));
+        }
+    }
+
+    @Test
+    void rejectsColumnsOffTheBoard() throws IOException {
+        GameRecord narrow = new GameRecord(1, 1_700_000_000_000L, GameRecord.HUMAN, BoardGeometry.STANDARD);
+        narrow.addMove(BoardGeometry.STANDARD.getColumns() - 1, 0, 100);
+        narrow.finish(GameRecord.ABANDONED, 120);
+        byte[] archive = write(narrow);
+        assertEquals(BoardGeometry.STANDARD.getColumns() - 1, read(archive).getColumn(0));
+
+        // the one move sits just before its millis and the end millis, each a single byte varint
+        int column = archive.length - 3;
+        archive[column] = (byte) BoardGeometry.STANDARD.getColumns();
+        assertThrows(IOException.class, () -> read(archive));
+        archive[column] = 0x7F;
+        assertThrows(IOException.class, () -> read(archive));
+    }
+
+    @Test
+    void leavesGamesThatAreTooLongToReadOutOfTheArchive() throws IOException {
+        GameRecord longest = game(1, GameRecord.MAX_MOVES);
+        GameRecord tooLong = game(2, GameRecord.MAX_MOVES + 1);
+        GameArchive.write(directory, 1, List.of(longest, tooLong, game(3, 10)));
+
+        List<GameRecord> games = new ArrayList<>();
+        GameArchive.scan(GameArchive.files(directory).get(0), games::add);
+        assertEquals(2, games.size());
+        assertEquals(1, games.get(0).getMatchId());
+        assertEquals(GameRecord.MAX_MOVES, games.get(0).getMoveCount());
+        assertEquals(3, games.get(1).getMatchId());
+        assertEquals(10, games.get(1).getMoveCount());
+    }
+
+    /**
+     * @return a game on the biggest board with moves spread over every column, a few seconds apart
+     */
+    private static GameRecord game(long matchId, int moves) {
+        int size = BoardGeometry.MAX_SIZE;
+        GameRecord game = new GameRecord(matchId, 1_700_000_000_000L, GameRecord.HUMAN,
+                new BoardGeometry(size, size, 4));
+        for (int move = 0; move < moves; move++) {
+            game.addMove(move * 7 % size, move % 2, move * 3000);
+        }
+        return game;
+    }
+
+    private static byte[] write(GameRecord game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        game.writeTo(new DataOutputStream(bytes), new byte[game.maxEncodedLength()]);
+        return bytes.toByteArray();
+    }
+
+    private static GameRecord read(byte[] archive) throws IOException {
+        return GameRecord.readFrom(new DataInputStream(new ByteArrayInputStream(archive)));
+    }
+}
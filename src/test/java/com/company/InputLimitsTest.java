@@ -0,0 +1,164 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two bots that answer the moment it's their turn play a whole game that fills the board, the longest game there
+ * can be, with the default InputLimits. Neither should be disconnected for sending too fast.
+ */
+class InputLimitsTest {
+
+    private static final String DRAW = "NO WINNER!";
+
+    @Test
+    void aFullGameOnTheBiggestBoardIsNeverTooFast() throws Exception {
+        BoardGeometry biggest = new BoardGeometry(BoardGeometry.MAX_SIZE, BoardGeometry.MAX_SIZE, 4);
+        ExecutorService executor = MatchExecutors.platform();
+        Matchmaker matchmaker = new Matchmaker(executor, TimeUnit.SECONDS.toMillis(10));
+        matchmaker.start();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (true) {
+                    try {
+                        matchmaker.submit(server.accept());
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            playToADraw(server.getLocalPort(), "R " + biggest.getRows() + "x" + biggest.getColumns(), biggest);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void aFullGameInNioModeIsNeverTooFast() throws Exception {
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        NioServer server = new NioServer(port, 1, GameJournal.disabled(), TimeUnit.SECONDS.toMillis(10),
+                InputLimits.DEFAULT);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        playToADraw(port, "R", BoardGeometry.STANDARD);
+    }
+
+    private static void playToADraw(int port, String ready, BoardGeometry geometry) throws Exception {
+        List<Queue<Integer>> moves = drawnGame(geometry);
+        CompletableFuture<String> one = CompletableFuture.supplyAsync(() -> play(port, ready, moves.get(0)));
+        // player 1 is whoever gets ready first
+        Thread.sleep(200);
+        CompletableFuture<String> two = CompletableFuture.supplyAsync(() -> play(port, ready, moves.get(1)));
+        for (CompletableFuture<String> player : List.of(one, two)) {
+            String ending = player.get(60, TimeUnit.SECONDS);
+            assertTrue(ending.startsWith(DRAW), ending);
+        }
+        assertTrue(moves.get(0).isEmpty() && moves.get(1).isEmpty());
+    }
+
+    /**
+     * Connects, gets ready and sends the next column every time the server says it's our turn.
+     *
+     * @return the line the game ended with
+     */
+    private static String play(int port, String ready, Queue<Integer> columns) {
+        try (Socket socket = connect(port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            out.println(ready);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.contains("Your turn!")) {
+                    out.println(columns.remove());
+                } else if (line.startsWith(DRAW) || line.contains("won") || line.contains("beaten")
+                        || line.contains("too")) {
+                    return line;
+                }
+            }
+            return "disconnected";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a connection to the server, which may still be starting up
+     */
+    private static Socket connect(int port) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                return new Socket("localhost", port);
+            } catch (ConnectException e) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted) {
+                    throw new IOException(interrupted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the board column by column so nobody ever gets 4 in a row: each column alternates colours, and the
+     * colour at the bottom changes every second column. When the wrong player is due to move, they pick a full
+     * column instead, which passes the turn, so the game also has as many moves as it can.
+     *
+     * @return each player's columns in the order they play them, numbered from 1
+     */
+    private static List<Queue<Integer>> drawnGame(BoardGeometry geometry) {
+        List<Queue<Integer>> moves = List.of(new ArrayDeque<>(), new ArrayDeque<>());
+        BitBoard board = new BitBoard(geometry);
+        int seat = 0;
+        for (int column = 0; column < geometry.getColumns(); column++) {
+            for (int row = 0; row < geometry.getRows(); row++) {
+                int owner = (row + column / 2) % 2;
+                if (seat != owner) {
+                    assertEquals(-1, board.play(column - 1, seat));
+                    moves.get(seat).add(column);
+                    seat = owner;
+                }
+                board.play(column, seat);
+                moves.get(seat).add(column + 1);
+                int outcome = GameRecord.outcome(board);
+                assertEquals(board.isFull() ? GameRecord.DRAW : GameRecord.IN_PROGRESS, outcome);
+                seat = 1 - seat;
+            }
+        }
+        return moves;
+    }
+}